@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a round trip to the authentication server: encoding the
+ * request payload, the HTTP exchange over loopback and decoding the response
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+
+    private StubAuthServer server;
+    private AuthClient auth;
+
+    @Setup
+    public void setup() throws IOException {
+        this.server = new StubAuthServer();
+        this.auth = new AuthClient(this.server.getBase(), null).setMetrics(new LaunchMetrics());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.close();
+    }
+
+    @Benchmark
+    public Session authenticate() throws IOException {
+        return this.auth.authenticate("bench@example.com", "hunter2", "bench-client-token");
+    }
+
+    @Benchmark
+    public boolean validate() throws IOException {
+        return this.auth.validate("0123456789abcdef", "bench-client-token");
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Builds throwaway {@code .minecraft} layouts for benchmarks: a version
+ * manifest listing generated library jars with their sizes and hashes, and a
+ * version jar holding the stub {@code net.minecraft.client.main.Main}.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+final class Fixtures {
+
+    /** The class that stands in for the client */
+    static final String STUB_MAIN = "net.minecraft.client.main.Main";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a fake installation of a version under an application data
+     * folder
+     *
+     * @param appData The application data folder
+     * @param version The version name
+     * @param libraries The number of library jars to generate
+     * @throws IOException Failure to write the layout
+     */
+    static void install(File appData, String version, int libraries) throws IOException {
+        File mc = new File(appData, ".minecraft");
+        File versionDir = new File(new File(mc, "versions"), version);
+        Files.createDirectories(versionDir.toPath());
+        StringBuilder libs = new StringBuilder();
+        Random random = new Random(version.hashCode());
+        for (int i = 0; i < libraries; i++) {
+            String path = "com/example/lib" + i + "/1.0/lib" + i + "-1.0.jar";
+            File jar = new File(new File(mc, "libraries"), path);
+            byte[] payload = new byte[16384 + random.nextInt(65536)];
+            random.nextBytes(payload);
+            Fixtures.jar(jar, "com/example/lib" + i + "/payload.bin", payload);
+            if (i > 0) {
+                libs.append(',');
+            }
+            libs.append("{\"name\":\"com.example:lib").append(i).append(":1.0\",\"downloads\":{\"artifact\":{\"path\":\"")
+                    .append(path).append("\",\"sha1\":\"").append(Hashing.sha1(jar)).append("\",\"size\":")
+                    .append(jar.length()).append("}}}");
+        }
+        String stub = STUB_MAIN.replace('.', '/') + ".class";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = Fixtures.class.getResourceAsStream("/" + stub)) {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                bytes.write(buf, 0, n);
+            }
+        }
+        Fixtures.jar(new File(versionDir, version + ".jar"), stub, bytes.toByteArray());
+        String manifest = "{\"id\":\"" + version + "\",\"type\":\"release\",\"mainClass\":\"" + STUB_MAIN + "\","
+                + "\"assets\":\"" + version + "\",\"arguments\":{\"jvm\":[\"-cp\",\"${classpath}\"],"
+                + "\"game\":[\"--username\",\"${auth_player_name}\",\"--uuid\",\"${auth_uuid}\","
+                + "\"--accessToken\",\"${auth_access_token}\",\"--version\",\"${version_name}\"]},"
+                + "\"libraries\":[" + libs + "]}";
+        Files.write(new File(versionDir, version + ".json").toPath(), manifest.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates an empty temporary application data folder
+     *
+     * @param prefix The folder name prefix
+     * @return The new folder
+     * @throws IOException Failure to create the folder
+     */
+    static File tempAppData(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Deletes a folder and everything in it
+     *
+     * @param dir The folder to delete
+     * @throws IOException Failure to delete a file
+     */
+    static void delete(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(dir.toPath())) {
+            for (Path p : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private static void jar(File file, String entry, byte[] content) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = Files.newOutputStream(file.toPath());
+                JarOutputStream jar = new JarOutputStream(out)) {
+            jar.putNextEntry(new JarEntry(entry));
+            jar.write(content);
+            jar.closeEntry();
+        }
+    }
+
+}
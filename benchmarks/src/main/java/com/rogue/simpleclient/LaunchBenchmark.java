@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a whole launch, from {@link SimpleClient#launch(UUID, String)}
+ * until the stub client has printed its ready marker and exited. Tuning is
+ * switched off so that the stub JVM starts with its defaults. With
+ * {@code warm} set, launches are handed JVMs from a {@link WarmPool}.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LaunchBenchmark {
+
+    private static final String VERSION = "bench";
+    @Param({"false", "true"})
+    public boolean warm;
+    private final UUID user = UUID.randomUUID();
+    private File appData;
+    private SimpleClient client;
+    private WarmPool pool;
+
+    @Setup
+    public void setup() throws IOException {
+        this.appData = Fixtures.tempAppData("simpleclient-launch");
+        Fixtures.install(this.appData, VERSION, 35);
+        this.client = new SimpleClient(VERSION, this.appData).setLogSinks().setTuningProfile(null)
+                .setMetrics(new LaunchMetrics());
+        if (this.warm) {
+            this.pool = new WarmPool(2);
+            this.client.setWarmPool(this.pool).prewarm();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println(this.client.getMetrics());
+        if (this.pool != null) {
+            System.out.println("warm pool hits=" + this.pool.getHits() + " misses=" + this.pool.getMisses());
+            this.pool.shutdown();
+        }
+        LaunchPlan.invalidateAll();
+        Fixtures.delete(this.appData);
+    }
+
+    @Benchmark
+    public int launch() throws IOException, InterruptedException, ExecutionException {
+        return this.client.launch(this.user, "BenchPlayer").get();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks turning a version into a command line: compiling the
+ * {@link LaunchPlan} from a manifest (the old {@code MCProc} construction),
+ * restoring it from the {@link PlanCache} as after a restart, filling in the
+ * per-user arguments (the old {@code appendTag}), choosing tuning flags and
+ * re-verifying an unchanged classpath
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaunchPlanBenchmark {
+
+    private static final String VERSION = "bench";
+    private final UUID user = UUID.randomUUID();
+    private final List<String> jvm = Collections.singletonList("-Xmx1G");
+    private final TuningProfile.Host host = new TuningProfile.Host(16L << 30, 8);
+    private File appData;
+    private LaunchPlan plan;
+    private LibraryVerifier verifier;
+
+    @Setup
+    public void setup() throws IOException {
+        this.appData = Fixtures.tempAppData("simpleclient-plan");
+        Fixtures.install(this.appData, VERSION, 35);
+        this.plan = LaunchPlan.of(VERSION, this.appData);
+        this.verifier = LibraryVerifier.forDirectory(this.plan.getMinecraftDir());
+        this.verifier.verify(this.plan);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        LaunchPlan.invalidateAll();
+        Fixtures.delete(this.appData);
+    }
+
+    @Benchmark
+    public LaunchPlan compile() throws IOException {
+        PlanCache.forDirectory(this.plan.getMinecraftDir()).forget(VERSION);
+        return LaunchPlan.of(VERSION, this.appData);
+    }
+
+    @Benchmark
+    public LaunchPlan restore() throws IOException {
+        LaunchPlan.invalidate(VERSION, this.appData);
+        return LaunchPlan.of(VERSION, this.appData);
+    }
+
+    @Benchmark
+    public LaunchPlan cached() throws IOException {
+        return LaunchPlan.of(VERSION, this.appData);
+    }
+
+    @Benchmark
+    public List<String> command() {
+        return this.plan.command("BenchPlayer", this.user, "0123456789abcdef", this.jvm);
+    }
+
+    @Benchmark
+    public List<String> tuningFlags() {
+        return TuningProfile.BALANCED.flags(this.host, 4);
+    }
+
+    @Benchmark
+    public LaunchPlan verifyWarm() throws IOException {
+        this.verifier.verify(this.plan);
+        return this.plan;
+    }
+
+}
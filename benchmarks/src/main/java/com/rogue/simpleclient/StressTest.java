@@ -0,0 +1,396 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives many launches of the stub client against the stub authentication
+ * server, and reports how many launches per second the host sustained, the
+ * latency of each launch phase, the memory of the client processes and the
+ * heap and GC activity of the launcher itself. Runs entirely on the local
+ * machine; child memory is read from {@code /proc}, so that part needs
+ * Linux.
+ * <br /><br />
+ * Options are given as {@code --name=value}:
+ * <ul>
+ * <li>{@code launches}: how many clients to launch (100)</li>
+ * <li>{@code concurrency}: how many clients may be starting or running at
+ * once (8)</li>
+ * <li>{@code rate}: launches started per second, or 0 for as fast as the
+ * concurrency allows (0)</li>
+ * <li>{@code linger}: how long each stub client stays up, in milliseconds
+ * (2000)</li>
+ * <li>{@code libraries}: library jars on the fake classpath (35)</li>
+ * <li>{@code auth}: whether each launch logs in against the stub server
+ * first (true)</li>
+ * <li>{@code warm}: JVMs kept ready in a {@link WarmPool}, or 0 (0)</li>
+ * <li>{@code merge}: whether to launch from a merged classpath jar
+ * (false)</li>
+ * <li>{@code tuning}: a {@link TuningProfile} by name, or {@code default}
+ * for SimpleClient's default (default)</li>
+ * <li>{@code sample}: how often client memory is sampled, in milliseconds
+ * (250)</li>
+ * <li>{@code bulk}: accounts to log in through a {@link BulkAuthenticator}
+ * before launching, or 0 to skip (0)</li>
+ * <li>{@code throttle}: during the bulk logins, every how many requests the
+ * stub server answers with 429 and {@code Retry-After: 1} or with 503, or 0
+ * for never (5)</li>
+ * <li>{@code loginrate}: bulk logins started per second (50)</li>
+ * </ul>
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class StressTest {
+
+    private static final String VERSION = "stress";
+    /** Option defaults, also the set of known options */
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("launches", "100");
+        DEFAULTS.put("concurrency", "8");
+        DEFAULTS.put("rate", "0");
+        DEFAULTS.put("linger", "2000");
+        DEFAULTS.put("libraries", "35");
+        DEFAULTS.put("auth", "true");
+        DEFAULTS.put("warm", "0");
+        DEFAULTS.put("merge", "false");
+        DEFAULTS.put("tuning", "default");
+        DEFAULTS.put("sample", "250");
+        DEFAULTS.put("bulk", "0");
+        DEFAULTS.put("throttle", "5");
+        DEFAULTS.put("loginrate", "50");
+    }
+
+    /** The options of this run */
+    private final Map<String, String> options;
+    /** The peak RSS of each live or finished client, keyed by process id */
+    private final ConcurrentMap<Long, Long> peaks = new ConcurrentHashMap<>();
+    /** The process ids of the clients currently running */
+    private final Set<Long> live = ConcurrentHashMap.newKeySet();
+    /** The highest total RSS of the clients running at once */
+    private final AtomicLong peakTotalRss = new AtomicLong();
+    /** The most clients seen running at once */
+    private final AtomicInteger peakLive = new AtomicInteger();
+    /** The highest launcher heap usage sampled */
+    private final AtomicLong peakHeap = new AtomicLong();
+    /** Launches whose client exited normally */
+    private final AtomicInteger succeeded = new AtomicInteger();
+    /** Launches that failed to log in, start, or exited with an error */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private StressTest(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = arg.startsWith("--") ? arg.substring(2, eq < 0 ? arg.length() : eq) : null;
+            if (name == null || !DEFAULTS.containsKey(name)) {
+                System.err.println("Unknown option " + arg + "; known options are --" + String.join("=, --", DEFAULTS.keySet()) + "=");
+                System.exit(2);
+            }
+            options.put(name, eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        new StressTest(options).run();
+    }
+
+    private void run() throws Exception {
+        int launches = this.integer("launches");
+        int concurrency = this.integer("concurrency");
+        double rate = Double.parseDouble(this.options.get("rate"));
+        boolean auth = Boolean.parseBoolean(this.options.get("auth"));
+        int warm = this.integer("warm");
+        List<String> overrides = Collections.singletonList("-Dstub.linger=" + this.integer("linger"));
+        File appData = Fixtures.tempAppData("simpleclient-stress");
+        Fixtures.install(appData, VERSION, this.integer("libraries"));
+        StubAuthServer server = new StubAuthServer();
+        AuthClient authClient = new AuthClient(server.getBase(), null);
+        Launcher launcher = new Launcher(concurrency, 0);
+        WarmPool pool = warm > 0 ? new WarmPool(warm) : null;
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "StressTest");
+            t.setDaemon(true);
+            return t;
+        });
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "StressTest-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        long sample = this.integer("sample");
+        sampler.scheduleAtFixedRate(this::sample, sample, sample, TimeUnit.MILLISECONDS);
+        System.out.println("Options: " + this.options);
+        if (this.integer("bulk") > 0) {
+            this.bulk(server);
+        }
+        if (launches == 0) {
+            sampler.shutdownNow();
+            workers.shutdownNow();
+            launcher.shutdown();
+            server.close();
+            Fixtures.delete(appData);
+            return;
+        }
+        if (pool != null) {
+            this.configure(new SimpleClient(VERSION, appData), launcher, pool).prewarm();
+        }
+        Map<String, long[]> gcBefore = StressTest.gc();
+        long authBefore = server.getRequests();
+        Semaphore slots = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(launches);
+        long began = System.nanoTime();
+        for (int i = 0; i < launches; i++) {
+            if (rate > 0) {
+                long due = began + (long) (i * TimeUnit.SECONDS.toNanos(1) / rate);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+            slots.acquire();
+            int index = i;
+            workers.execute(() -> this.launch(index, appData, auth ? authClient : null, launcher, pool, overrides, () -> {
+                slots.release();
+                done.countDown();
+            }));
+        }
+        done.await();
+        long elapsed = System.nanoTime() - began;
+        sampler.shutdownNow();
+        this.report(launches, elapsed, gcBefore, server.getRequests() - authBefore);
+        if (pool != null) {
+            System.out.println("Warm pool: " + pool.getHits() + " hits, " + pool.getMisses() + " misses");
+        }
+        workers.shutdownNow();
+        if (pool != null) {
+            pool.shutdown();
+        }
+        launcher.shutdown();
+        server.close();
+        Fixtures.delete(appData);
+    }
+
+    /**
+     * Performs one launch, calling {@code finished} once the client has
+     * exited or the launch failed
+     */
+    private void launch(int index, File appData, AuthClient auth, Launcher launcher, WarmPool pool,
+            List<String> overrides, Runnable finished) {
+        try {
+            SimpleClient client = auth == null ? new SimpleClient(VERSION, appData)
+                    : new SimpleClient(VERSION, "stress" + index + "@example.com", "hunter2", appData, auth);
+            this.configure(client, launcher, pool);
+            Session session = client.getSession();
+            UUID user = session == null ? UUID.randomUUID() : session.getProfileId();
+            String name = session == null ? "Stress" + index : session.getProfileName();
+            LaunchHandle handle = client.launch(user, name, overrides);
+            handle.onStart(h -> {
+                long pid = Supervisor.pid(h.getProcess());
+                if (pid > 0) {
+                    this.live.add(pid);
+                    h.onExit(code -> this.live.remove(pid));
+                }
+            });
+            handle.onExit(code -> {
+                (code == 0 ? this.succeeded : this.failed).incrementAndGet();
+                finished.run();
+            });
+            handle.onFailure(ex -> {
+                System.err.println("Launch " + index + " failed: " + ex);
+                this.failed.incrementAndGet();
+                finished.run();
+            });
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Launch " + index + " failed: " + ex);
+            this.failed.incrementAndGet();
+            finished.run();
+        }
+    }
+
+    /**
+     * Logs in the bulk accounts against the stub server, throttling a share
+     * of the requests, and reports how the logins were paced and retried
+     */
+    private void bulk(StubAuthServer server) throws Exception {
+        int accounts = this.integer("bulk");
+        double rate = Double.parseDouble(this.options.get("loginrate"));
+        List<BulkAuthenticator.Credentials> credentials = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            credentials.add(new BulkAuthenticator.Credentials("bulk" + i + "@example.com", "hunter2"));
+        }
+        LaunchMetrics metrics = new LaunchMetrics();
+        BulkAuthenticator bulk = new BulkAuthenticator(new AuthClient(server.getBase(), null).setMetrics(metrics))
+                .setRate(rate, Math.max(1, (int) rate));
+        long requestsBefore = server.getRequests();
+        server.setThrottle(this.integer("throttle"), 1);
+        long began = System.nanoTime();
+        List<BulkAuthenticator.Result> results = bulk.authenticate(credentials, null).get();
+        double seconds = (System.nanoTime() - began) / 1e9;
+        server.setThrottle(0, 0);
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram retried = new LatencyHistogram();
+        int ok = 0;
+        int attempts = 0;
+        for (BulkAuthenticator.Result res : results) {
+            if (res.isSuccess()) {
+                ok++;
+            } else {
+                System.err.println("Bulk login " + res.getUsername() + " failed: " + res.getError());
+            }
+            attempts += res.getAttempts();
+            all.record(res.getNanos());
+            if (res.getAttempts() > 1) {
+                retried.record(res.getNanos());
+            }
+        }
+        System.out.println();
+        System.out.printf("Bulk logins: %d ok, %d failed in %.1fs = %.1f/s, %d attempts, %d requests (%d throttled)%n", ok,
+                accounts - ok, seconds, accounts / seconds, attempts, server.getRequests() - requestsBefore, server.getThrottled());
+        System.out.printf("%-8s %7s %9s %9s %9s %9s%n", "logins", "count", "p50 ms", "p90 ms", "p99 ms", "min ms");
+        StressTest.row("all", all);
+        StressTest.row("retried", retried);
+    }
+
+    private static void row(String name, LatencyHistogram h) {
+        if (h.getCount() > 0) {
+            System.out.printf("%-8s %7d %9.2f %9.2f %9.2f %9.2f%n", name, h.getCount(), h.getPercentile(50) / 1e6,
+                    h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6, h.getPercentile(0) / 1e6);
+        }
+    }
+
+    /**
+     * Applies the options of this run to a client
+     */
+    private SimpleClient configure(SimpleClient client, Launcher launcher, WarmPool pool) {
+        client.setLauncher(launcher).setLogSinks().setWarmPool(pool)
+                .setMergeClasspath(Boolean.parseBoolean(this.options.get("merge")));
+        String tuning = this.options.get("tuning");
+        if (!tuning.equals("default")) {
+            client.setTuningProfile(tuning.equals("none") ? null : TuningProfile.named(tuning));
+        }
+        return client;
+    }
+
+    /**
+     * Samples the memory of every running client and of the launcher
+     */
+    private void sample() {
+        long total = 0;
+        int count = 0;
+        for (long pid : this.live) {
+            ResourceSample s = Supervisor.read(pid, null);
+            if (s == null || s.getRss() < 0) {
+                continue;
+            }
+            this.peaks.merge(pid, s.getRss(), Math::max);
+            total += s.getRss();
+            count++;
+        }
+        StressTest.max(this.peakTotalRss, total);
+        this.peakLive.accumulateAndGet(count, Math::max);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        StressTest.max(this.peakHeap, memory.getHeapMemoryUsage().getUsed());
+    }
+
+    private void report(int launches, long elapsed, Map<String, long[]> gcBefore, long authRequests) {
+        double seconds = elapsed / 1e9;
+        LaunchMetrics metrics = LaunchMetrics.getDefault();
+        System.out.println();
+        System.out.printf("Launches: %d ok, %d failed in %.1fs = %.2f/s (%.0f/min)%n", this.succeeded.get(), this.failed.get(),
+                seconds, launches / seconds, launches * 60 / seconds);
+        System.out.printf("Auth requests: %d, failures %d, retries %d%n", authRequests, metrics.getAuthFailures(), metrics.getAuthRetries());
+        System.out.println();
+        System.out.printf("%-8s %7s %9s %9s %9s %9s%n", "phase", "count", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (LaunchMetrics.Phase phase : LaunchMetrics.Phase.values()) {
+            LatencyHistogram h = metrics.getHistogram(VERSION, phase);
+            if (h == null || h.getCount() == 0) {
+                continue;
+            }
+            System.out.printf("%-8s %7d %9.2f %9.2f %9.2f %9.2f%n", phase.name().toLowerCase(), h.getCount(), h.getPercentile(50) / 1e6,
+                    h.getPercentile(90) / 1e6, h.getPercentile(99) / 1e6, h.getMax() / 1e6);
+        }
+        System.out.println();
+        long[] rss = new long[this.peaks.size()];
+        int i = 0;
+        for (long peak : this.peaks.values()) {
+            rss[i++] = peak;
+        }
+        Arrays.sort(rss);
+        if (rss.length > 0) {
+            System.out.printf("Client peak RSS over %d clients: p50 %d MB, p90 %d MB, max %d MB%n", rss.length,
+                    rss[rss.length / 2] >> 20, rss[(int) (rss.length * 0.9)] >> 20, rss[rss.length - 1] >> 20);
+            System.out.printf("Clients running at once: up to %d, together up to %d MB%n", this.peakLive.get(), this.peakTotalRss.get() >> 20);
+        } else {
+            System.out.println("Client RSS: not sampled (no /proc, or clients exited before the first sample)");
+        }
+        System.out.printf("Launcher heap: peak %d MB used, %d MB committed; threads peak %d%n", this.peakHeap.get() >> 20,
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getCommitted() >> 20,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        for (Map.Entry<String, long[]> gc : StressTest.gc().entrySet()) {
+            long[] before = gcBefore.getOrDefault(gc.getKey(), new long[2]);
+            System.out.printf("GC %s: %d collections, %d ms%n", gc.getKey(), gc.getValue()[0] - before[0], gc.getValue()[1] - before[1]);
+        }
+    }
+
+    /**
+     * Returns the collection count and time of each garbage collector
+     */
+    private static Map<String, long[]> gc() {
+        Map<String, long[]> back = new HashMap<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            back.put(gc.getName(), new long[] { gc.getCollectionCount(), gc.getCollectionTime() });
+        }
+        return back;
+    }
+
+    private static void max(AtomicLong value, long candidate) {
+        value.accumulateAndGet(candidate, Math::max);
+    }
+
+    private int integer(String option) {
+        return Integer.parseInt(this.options.get(option));
+    }
+
+}
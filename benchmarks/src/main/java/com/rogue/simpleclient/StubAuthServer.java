@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the Mojang authentication server. Answers
+ * {@code authenticate} and {@code refresh} with a payload shaped like the
+ * real one, and {@code validate} with 204. It can be told to throttle a
+ * share of requests, answering them with 429 and a {@code Retry-After}
+ * header or with a bare 503, the way the real server does under load.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+final class StubAuthServer implements AutoCloseable {
+
+    /** The underlying server */
+    private final HttpServer server;
+    /** The number of requests answered */
+    private final AtomicLong requests = new AtomicLong();
+    /** The number of requests answered with 429 or 503 */
+    private final AtomicLong throttled = new AtomicLong();
+    /** Every how many requests one is throttled, or 0 for none */
+    private volatile int throttleEvery;
+    /** The {@code Retry-After} sent with a 429, in seconds */
+    private volatile int retryAfter;
+
+    /**
+     * Starts a stub server on an ephemeral loopback port
+     *
+     * @throws IOException Failure to bind the server
+     */
+    StubAuthServer() throws IOException {
+        // send headers and body in one segment instead of waiting on delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        this.server.setExecutor(Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "StubAuthServer");
+            t.setDaemon(true);
+            return t;
+        }));
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * Returns the base url of the server, ending in a slash
+     *
+     * @return The base url
+     */
+    URL getBase() {
+        try {
+            return new URL("http://127.0.0.1:" + this.server.getAddress().getPort() + "/");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the number of requests answered so far
+     *
+     * @return The request count
+     */
+    long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Throttles every {@code every}th request. Throttled requests alternate
+     * between a 429 carrying a {@code Retry-After} header and a 503 without
+     * one.
+     *
+     * @param every Every how many requests one is throttled, or 0 for none
+     * @param retryAfterSeconds The {@code Retry-After} sent with a 429
+     * @return This instance
+     */
+    StubAuthServer setThrottle(int every, int retryAfterSeconds) {
+        this.throttleEvery = Math.max(0, every);
+        this.retryAfter = Math.max(0, retryAfterSeconds);
+        return this;
+    }
+
+    /**
+     * Returns the number of requests answered with 429 or 503 so far
+     *
+     * @return The throttled request count
+     */
+    long getThrottled() {
+        return this.throttled.get();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            byte[] buf = new byte[4096];
+            while (in.read(buf) > 0) {
+            }
+        }
+        long n = this.requests.incrementAndGet();
+        int every = this.throttleEvery;
+        if (every > 0 && n % every == 0) {
+            this.throttle(ex, this.throttled.incrementAndGet() % 2 == 1);
+            return;
+        }
+        String endpoint = ex.getRequestURI().getPath().substring(1);
+        if (endpoint.equals("validate")) {
+            ex.sendResponseHeaders(204, -1);
+            ex.close();
+            return;
+        }
+        String id = UUID.randomUUID().toString().replace("-", "");
+        String body = "{\"accessToken\":\"" + UUID.randomUUID().toString().replace("-", "") + id + "\","
+                + "\"clientToken\":\"" + UUID.randomUUID() + "\","
+                + "\"availableProfiles\":[{\"id\":\"" + id + "\",\"name\":\"StubPlayer\",\"legacy\":false}],"
+                + "\"selectedProfile\":{\"id\":\"" + id + "\",\"name\":\"StubPlayer\",\"legacy\":false},"
+                + "\"user\":{\"id\":\"" + id + "\",\"properties\":[{\"name\":\"preferredLanguage\",\"value\":\"en\"}]}}";
+        byte[] out = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+    /**
+     * Answers a throttled request, either with a 429 and a JSON error naming
+     * how long to wait, or with a 503 and an HTML page from a proxy
+     */
+    private void throttle(HttpExchange ex, boolean tooMany) throws IOException {
+        String body;
+        if (tooMany) {
+            body = "{\"error\":\"TooManyRequestsException\",\"errorMessage\":\"The client has sent too many requests within a certain amount of time\"}";
+            ex.getResponseHeaders().set("Content-Type", "application/json");
+            ex.getResponseHeaders().set("Retry-After", Integer.toString(this.retryAfter));
+        } else {
+            body = "<html><body><h1>503 Service Unavailable</h1></body></html>";
+            ex.getResponseHeaders().set("Content-Type", "text/html");
+        }
+        byte[] out = body.getBytes(StandardCharsets.UTF_8);
+        ex.sendResponseHeaders(tooMany ? 429 : 503, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.minecraft.client.main;
+
+/**
+ * Stands in for the minecraft client in benchmarks. Prints the ready marker
+ * SimpleClient waits for, optionally stays up for {@code stub.linger}
+ * milliseconds, then exits.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class Main {
+
+    private Main() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("Setting user: " + (args.length > 1 ? args[1] : "unknown"));
+        System.out.println("Sound engine started");
+        System.out.flush();
+        long linger = Long.getLong("stub.linger", 0);
+        if (linger > 0) {
+            Thread.sleep(linger);
+        }
+    }
+
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Verifies the asset object store of a {@link LaunchPlan} and repairs it from
+ * an {@link AssetSource}. Objects are checked on a bounded I/O pool, and each
+ * broken object is handed to a separate repair pool as soon as it is found,
+ * so copying overlaps with the rest of the scan. Copies are made into a
+ * {@code .part} file next to the object, which a later run resumes from.
+ * Copies into the same folder hold a lock on a file in
+ * {@code simpleclient/locks}, so concurrent launches never append to the
+ * same {@code .part} file.
+ * <br /><br />
+ * Hashes are kept in a {@link FileHashIndex}, and after a clean pass the
+ * asset index's size and modification time are recorded along with those of
+ * every {@code objects/xx} folder it uses. While all of these are unchanged,
+ * later launches skip the scan entirely; an object corrupted in place without
+ * its folder changing is caught the next time the scan does run.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class AssetManager {
+
+    /** Marks a verified-state file */
+    private static final int MAGIC = 0x53434153;
+    /** The state format, bumped whenever the layout changes */
+    private static final int FORMAT = 1;
+    /** The pool objects are checked on, shared by all managers */
+    private static final ExecutorService VERIFY = Executors.newFixedThreadPool(8, Launcher.daemon("SimpleClient-assets"));
+    /** The pool objects are copied on, shared by all managers */
+    private static final ExecutorService REPAIR = Executors.newFixedThreadPool(4, Launcher.daemon("SimpleClient-repair"));
+    /** In-process monitors, since {@link FileLock} is held per-JVM */
+    private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<>();
+    /** Where broken objects are copied from, or {@code null} to only report */
+    private final AssetSource source;
+
+    /**
+     * Constructs a new {@link AssetManager}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param source Where to copy missing or corrupt objects from, or
+     *               {@code null} to only report them
+     */
+    public AssetManager(AssetSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Verifies, and where possible repairs, the assets used by a plan
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} whose assets to verify
+     * @return A {@link Report} of what was checked and repaired
+     * @throws IOException Failure to read the asset index or save state
+     */
+    public Report verify(LaunchPlan plan) throws IOException {
+        File assets = new File(plan.getMinecraftDir(), "assets");
+        File objects = new File(assets, "objects");
+        File state = new File(plan.getMinecraftDir(), "simpleclient");
+        VersionManifest manifest = plan.getManifest();
+        String id = manifest.getAssets() == null ? plan.getVersion() : manifest.getAssets();
+        File indexFile = new File(new File(assets, "indexes"), id + ".json");
+        if (!indexFile.isFile()) {
+            if (this.source == null) {
+                return new Report(0, 0, Collections.singletonList("missing asset index " + indexFile), false);
+            }
+            this.fetch("indexes/" + id + ".json", indexFile, manifest.getAssetIndexSha1(), -1, null, state);
+        }
+        Map<String, Long> objs = AssetManager.readIndex(indexFile);
+        File stateFile = new File(state, "assets-" + id + ".state");
+        if (AssetManager.readState(stateFile).equals(AssetManager.snapshot(indexFile, objects, objs))) {
+            return new Report(objs.size(), 0, Collections.emptyList(), true);
+        }
+        FileHashIndex index = FileHashIndex.of(new File(state, "assets.idx"));
+        Queue<Future<String>> repairs = new ConcurrentLinkedQueue<>();
+        AtomicInteger repaired = new AtomicInteger();
+        List<Future<String>> checks = new ArrayList<>(objs.size());
+        for (Map.Entry<String, Long> e : objs.entrySet()) {
+            String hash = e.getKey();
+            long size = e.getValue();
+            checks.add(AssetManager.VERIFY.submit(() -> {
+                File file = AssetManager.object(objects, hash);
+                String problem = AssetManager.check(index, file, hash, size);
+                if (problem != null && this.source != null) {
+                    repairs.add(AssetManager.REPAIR.submit(() -> {
+                        this.fetch(AssetManager.path(hash), file, hash, size, index, state);
+                        repaired.incrementAndGet();
+                        return null;
+                    }));
+                    return null;
+                }
+                return problem;
+            }));
+        }
+        List<String> problems = new ArrayList<>();
+        AssetManager.collect(checks, problems, "verifying");
+        AssetManager.collect(repairs, problems, "repairing");
+        index.save();
+        if (problems.isEmpty()) {
+            AssetManager.writeState(stateFile, AssetManager.snapshot(indexFile, objects, objs));
+        }
+        return new Report(objs.size(), repaired.get(), problems, false);
+    }
+
+    private static void collect(Iterable<Future<String>> futures, List<String> problems, String action) throws IOException {
+        for (Future<String> f : futures) {
+            try {
+                String problem = f.get();
+                if (problem != null) {
+                    problems.add(problem);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while " + action + " assets", ex);
+            } catch (ExecutionException ex) {
+                problems.add(ex.getCause().toString());
+            }
+        }
+    }
+
+    /**
+     * Checks a single object
+     *
+     * @return A description of the problem, or {@code null} if the object is
+     *         fine
+     */
+    private static String check(FileHashIndex index, File file, String hash, long size) throws IOException {
+        if (!file.isFile()) {
+            return "missing asset " + hash;
+        }
+        if (size >= 0 && file.length() != size) {
+            return "size mismatch for asset " + hash + " (expected " + size + ", found " + file.length() + ")";
+        }
+        if (!index.hash(file).equalsIgnoreCase(hash)) {
+            index.forget(file);
+            return "hash mismatch for asset " + hash;
+        }
+        return null;
+    }
+
+    /**
+     * Copies a file from the source, resuming a previous partial copy if one
+     * exists. The copy is checked before it is moved into place, and retried
+     * from the start once if a resumed copy turns out to be corrupt. Copies
+     * into the same folder are serialized, across threads and processes, and
+     * a copy is skipped if another launch has meanwhile put the file in place.
+     *
+     * @param path The path within the source
+     * @param target Where to place the file
+     * @param sha1 The expected hash, or {@code null} if unknown
+     * @param size The expected size, or {@code -1} if unknown
+     * @param index The index to record the new hash in, or {@code null}
+     * @param state The SimpleClient state folder, which holds the lock files
+     * @throws IOException Failure to copy the file, or a corrupt copy
+     */
+    @SuppressWarnings("try")
+    private void fetch(String path, File target, String sha1, long size, FileHashIndex index, File state) throws IOException {
+        File dir = target.getParentFile();
+        Files.createDirectories(dir.toPath());
+        File locks = new File(state, "locks");
+        Files.createDirectories(locks.toPath());
+        File lockFile = new File(locks, "assets-" + dir.getName() + ".lock");
+        Object monitor = AssetManager.MONITORS.computeIfAbsent(lockFile.getAbsolutePath(), k -> new Object());
+        synchronized (monitor) {
+            try (RandomAccessFile raf = new RandomAccessFile(lockFile, "rw");
+                    FileChannel channel = raf.getChannel();
+                    FileLock lock = channel.lock()) {
+                if (sha1 != null && target.isFile() && (size < 0 || target.length() == size)
+                        && Hashing.sha1(target).equalsIgnoreCase(sha1)) {
+                    if (index != null) {
+                        index.record(target, target.length(), target.lastModified(), sha1);
+                    }
+                    return;
+                }
+                this.copy(path, target, sha1, size, index);
+            }
+        }
+    }
+
+    /**
+     * Copies a file from the source into place, while holding the lock for
+     * its folder
+     *
+     * @param path The path within the source
+     * @param target Where to place the file
+     * @param sha1 The expected hash, or {@code null} if unknown
+     * @param size The expected size, or {@code -1} if unknown
+     * @param index The index to record the new hash in, or {@code null}
+     * @throws IOException Failure to copy the file, or a corrupt copy
+     */
+    private void copy(String path, File target, String sha1, long size, FileHashIndex index) throws IOException {
+        File part = new File(target.getPath() + ".part");
+        for (int attempt = 0;; attempt++) {
+            long offset = part.isFile() ? part.length() : 0;
+            if (size >= 0 && offset > size) {
+                Files.delete(part.toPath());
+                offset = 0;
+            }
+            if (size < 0 || offset < size) {
+                try (InputStream in = this.source.open(path, offset);
+                        OutputStream out = new FileOutputStream(part, offset > 0)) {
+                    byte[] buf = new byte[65536];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                }
+            }
+            String problem = null;
+            if (size >= 0 && part.length() != size) {
+                problem = "size mismatch for copied " + path + " (expected " + size + ", found " + part.length() + ")";
+            } else if (sha1 != null && !Hashing.sha1(part).equalsIgnoreCase(sha1)) {
+                problem = "hash mismatch for copied " + path;
+            }
+            if (problem == null) {
+                break;
+            }
+            Files.delete(part.toPath());
+            if (attempt > 0 || offset == 0) {
+                throw new IOException(problem);
+            }
+        }
+        try {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (index != null && sha1 != null) {
+            index.record(target, target.length(), target.lastModified(), sha1);
+        }
+    }
+
+    private static String path(String hash) {
+        return "objects/" + hash.substring(0, 2) + "/" + hash;
+    }
+
+    private static File object(File objects, String hash) {
+        return new File(new File(objects, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Reads the objects of an asset index, keyed by hash with their sizes.
+     * Objects shared by several names are only listed once.
+     *
+     * @param file The asset index
+     * @return The objects in the index
+     * @throws IOException Failure to read or parse the index
+     */
+    private static Map<String, Long> readIndex(File file) throws IOException {
+        Map<String, Long> back = new LinkedHashMap<>();
+        ContentHandler h = new ContentHandler() {
+
+            private int depth;
+            private boolean inObjects;
+            private String key;
+            private String hash;
+            private long size = -1;
+
+            @Override
+            public void startJSON() {
+            }
+
+            @Override
+            public void endJSON() {
+            }
+
+            @Override
+            public boolean startObject() {
+                this.depth++;
+                return true;
+            }
+
+            @Override
+            public boolean endObject() {
+                if (this.depth-- == 3 && this.inObjects && this.hash != null && this.hash.length() > 2) {
+                    back.putIfAbsent(this.hash.toLowerCase(), this.size);
+                    this.hash = null;
+                    this.size = -1;
+                }
+                return true;
+            }
+
+            @Override
+            public boolean startObjectEntry(String key) {
+                if (this.depth == 1) {
+                    this.inObjects = key.equals("objects");
+                }
+                this.key = key;
+                return true;
+            }
+
+            @Override
+            public boolean endObjectEntry() {
+                return true;
+            }
+
+            @Override
+            public boolean startArray() {
+                return true;
+            }
+
+            @Override
+            public boolean endArray() {
+                return true;
+            }
+
+            @Override
+            public boolean primitive(Object value) {
+                if (this.depth == 3 && this.inObjects && value != null) {
+                    if (this.key.equals("hash")) {
+                        this.hash = value.toString();
+                    } else if (this.key.equals("size") && value instanceof Number) {
+                        this.size = ((Number) value).longValue();
+                    }
+                }
+                return true;
+            }
+
+        };
+        try (Reader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            new JSONParser().parse(r, h);
+        } catch (ParseException ex) {
+            throw new IOException("Malformed asset index " + file + ": " + ex, ex);
+        }
+        return back;
+    }
+
+    /**
+     * Takes the size and modification time of the asset index, and the
+     * modification time of each object folder it uses
+     */
+    private static Map<String, Long> snapshot(File indexFile, File objects, Map<String, Long> objs) {
+        Map<String, Long> back = new TreeMap<>();
+        back.put("index.size", indexFile.length());
+        back.put("index.mtime", indexFile.lastModified());
+        for (String hash : objs.keySet()) {
+            String dir = hash.substring(0, 2);
+            if (!back.containsKey(dir)) {
+                back.put(dir, new File(objects, dir).lastModified());
+            }
+        }
+        return back;
+    }
+
+    private static Map<String, Long> readState(File file) {
+        Map<String, Long> back = new TreeMap<>();
+        if (!file.isFile()) {
+            return back;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return back;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                back.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException ex) {
+            back.clear();
+        }
+        return back;
+    }
+
+    private static void writeState(File file, Map<String, Long> state) throws IOException {
+        Path target = file.toPath();
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(state.size());
+                for (Map.Entry<String, Long> e : state.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue());
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * The outcome of verifying a plan's assets
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static final class Report {
+
+        /** The number of distinct objects in the asset index */
+        private final int objects;
+        /** The number of objects that were copied from the source */
+        private final int repaired;
+        /** A description of each problem that remains */
+        private final List<String> problems;
+        /** Whether the scan was skipped because nothing changed */
+        private final boolean cached;
+
+        Report(int objects, int repaired, List<String> problems, boolean cached) {
+            this.objects = objects;
+            this.repaired = repaired;
+            this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+            this.cached = cached;
+        }
+
+        /**
+         * Returns the number of distinct objects in the asset index
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The number of objects
+         */
+        public int getObjects() {
+            return this.objects;
+        }
+
+        /**
+         * Returns the number of objects that were copied from the source
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The number of repaired objects
+         */
+        public int getRepaired() {
+            return this.repaired;
+        }
+
+        /**
+         * Returns a description of each problem that could not be repaired
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return An unmodifiable list of problems
+         */
+        public List<String> getProblems() {
+            return this.problems;
+        }
+
+        /**
+         * Returns whether the scan was skipped because neither the index nor
+         * any object folder changed since the last clean pass
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return {@code true} if the scan was skipped
+         */
+        public boolean isCached() {
+            return this.cached;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{objects=" + this.objects + ", repaired=" + this.repaired
+                    + ", problems=" + this.problems.size() + ", cached=" + this.cached + "}";
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A place that missing or corrupt assets can be copied from. Paths are
+ * relative to an {@code assets} folder, e.g. {@code objects/ab/ab12...} or
+ * {@code indexes/1.8.json}.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+@FunctionalInterface
+public interface AssetSource {
+
+    /**
+     * Opens a file from this source, starting at an offset so that partial
+     * copies can be resumed
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param path The path, relative to the assets folder
+     * @param offset The number of bytes to skip
+     * @return A stream of the file's contents from {@code offset} on
+     * @throws IOException If the file cannot be opened
+     */
+    public InputStream open(String path, long offset) throws IOException;
+
+    /**
+     * Returns a source backed by a local mirror of an {@code assets} folder
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param root The mirrored assets folder
+     * @return A directory {@link AssetSource}
+     */
+    public static AssetSource directory(File root) {
+        return (path, offset) -> {
+            File f = new File(root, path);
+            if (!f.isFile()) {
+                throw new FileNotFoundException(f.getPath());
+            }
+            FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            ch.position(offset);
+            return Channels.newInputStream(ch);
+        };
+    }
+
+    /**
+     * Returns a source that fetches files relative to a base url, such as a
+     * {@code file://} folder or an HTTP server on localhost. HTTP requests
+     * use a {@code Range} header to resume; other servers are skipped ahead.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param base The base url, ending in a slash
+     * @return A url {@link AssetSource}
+     */
+    public static AssetSource url(URL base) {
+        return (path, offset) -> {
+            URLConnection conn = new URL(base, path).openConnection();
+            conn.setConnectTimeout(10000);
+            conn.setReadTimeout(30000);
+            boolean ranged = false;
+            if (conn instanceof HttpURLConnection) {
+                if (offset > 0) {
+                    conn.setRequestProperty("Range", "bytes=" + offset + "-");
+                }
+                int code = ((HttpURLConnection) conn).getResponseCode();
+                if (code == HttpURLConnection.HTTP_PARTIAL) {
+                    ranged = true;
+                } else if (code != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP " + code + " for " + conn.getURL());
+                }
+            }
+            InputStream in = conn.getInputStream();
+            long skip = ranged ? 0 : offset;
+            while (skip > 0) {
+                long n = in.skip(skip);
+                if (n <= 0) {
+                    if (in.read() < 0) {
+                        in.close();
+                        throw new IOException("Source file shorter than " + offset + " bytes: " + conn.getURL());
+                    }
+                    n = 1;
+                }
+                skip -= n;
+            }
+            return in;
+        };
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.UUID;
+
+/**
+ * Talks to a Yggdrasil-style authentication server. When backed by a
+ * {@link SessionStore}, previously issued access tokens are checked with the
+ * {@code validate} and {@code refresh} endpoints before falling back to a full
+ * password authentication.
+ * <br /><br />
+ * Requests and responses go through an {@link AuthCodec}, which streams
+ * them without building JSON documents and turns error payloads into
+ * {@link AuthException}s.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class AuthClient {
+
+    /** The base url for Mojang's authentication server */
+    public static final String MOJANG_AUTH_SERVER = "https://authserver.mojang.com/";
+    /** The base url of the authentication server, ending in a slash */
+    private final URL base;
+    /** The session cache, or {@code null} if sessions are not cached */
+    private final SessionStore store;
+    /** Client token used when there is no session store */
+    private final String transientToken = UUID.randomUUID().toString();
+    /** Counts failed logins and fallbacks */
+    private volatile LaunchMetrics metrics = LaunchMetrics.getDefault();
+
+    /**
+     * Constructs a new {@link AuthClient}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param base The base url of the authentication server
+     * @param store The session cache to use, or {@code null} to always
+     *              authenticate with a password
+     */
+    public AuthClient(URL base, SessionStore store) {
+        this.base = base;
+        this.store = store;
+    }
+
+    /**
+     * Returns a session for the supplied account. A cached session is
+     * validated, then refreshed if the server rejects it, and a password
+     * authentication is only performed when neither succeeds. If the server
+     * cannot be reached, or is rate limiting or failing, the cached session
+     * is kept and a retryable {@link AuthException} is thrown instead.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param username The username/email to use
+     * @param password The password to use
+     * @return The authenticated {@link Session}
+     * @throws AuthException If the server rejected the credentials, or
+     *                       could not check a cached session right now
+     * @throws IOException Some other connection error
+     */
+    public Session login(String username, String password) throws IOException {
+        try {
+            return this.attempt(username, password);
+        } catch (IOException | RuntimeException ex) {
+            this.metrics.authFailed();
+            throw ex;
+        }
+    }
+
+    /**
+     * Sets the metrics that failed logins and fallbacks are counted in
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param metrics The {@link LaunchMetrics} to use
+     * @return This instance
+     */
+    public AuthClient setMetrics(LaunchMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Returns the metrics that failed logins and fallbacks are counted in
+     *
+     * @return The {@link LaunchMetrics} in use
+     */
+    LaunchMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    private Session attempt(String username, String password) throws IOException {
+        if (this.store == null) {
+            return this.authenticate(username, password, this.transientToken);
+        }
+        String clientToken = this.store.getClientToken();
+        Session cached = this.store.get(username);
+        if (cached != null && clientToken.equals(cached.getClientToken())) {
+            if (this.validate(cached.getAccessToken(), clientToken)) {
+                return cached;
+            }
+            this.metrics.authRetried();
+            Session refreshed = this.refresh(cached.getAccessToken(), clientToken);
+            if (refreshed != null) {
+                if (!refreshed.hasProfile()) {
+                    refreshed = new Session(refreshed.getAccessToken(), clientToken, cached.getProfileId(), cached.getProfileName());
+                }
+                this.store.put(username, refreshed);
+                return refreshed;
+            }
+        }
+        if (cached != null) {
+            this.metrics.authRetried();
+            this.store.remove(username);
+        }
+        Session fresh = this.authenticate(username, password, clientToken);
+        this.store.put(username, fresh);
+        return fresh;
+    }
+
+    /**
+     * Performs a full password authentication
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param username The username/email to use
+     * @param password The password to use
+     * @param clientToken The client token to authenticate with
+     * @return The authenticated {@link Session}
+     * @throws AuthException If the server rejected the request or answered
+     *                       without an access token
+     * @throws IOException Some other connection error
+     */
+    public Session authenticate(String username, String password, String clientToken) throws IOException {
+        AuthCodec codec = AuthCodec.get().begin()
+                .open("agent").field("name", "Minecraft").field("version", 1).close()
+                .field("username", username).field("password", password).field("clientToken", clientToken).close();
+        Response res = this.post("authenticate", codec);
+        if (res.code != HttpURLConnection.HTTP_OK) {
+            throw codec.error("Authentication failed", res.code, res.retryAfter);
+        }
+        return codec.session(clientToken, res.code);
+    }
+
+    /**
+     * Checks whether an access token is still usable. Only a 401 or 403
+     * answer means it is not; any other failure says nothing about the
+     * token and is thrown.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param accessToken The access token to check
+     * @param clientToken The client token it was issued to
+     * @return {@code true} if the server accepted the token, {@code false}
+     *         if it rejected it
+     * @throws AuthException If the server could not be reached or answered
+     *                       otherwise; see {@link AuthException#isRetryable()}
+     */
+    public boolean validate(String accessToken, String clientToken) throws AuthException {
+        if (accessToken == null) {
+            return false;
+        }
+        AuthCodec codec = AuthCodec.get().begin().field("accessToken", accessToken).field("clientToken", clientToken).close();
+        Response res = this.exchange("validate", codec);
+        if (res.code == HttpURLConnection.HTTP_NO_CONTENT || res.code == HttpURLConnection.HTTP_OK) {
+            return true;
+        }
+        if (AuthClient.isRejection(res.code)) {
+            return false;
+        }
+        throw codec.error("Validation failed", res.code, res.retryAfter);
+    }
+
+    /**
+     * Exchanges an access token for a new one
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param accessToken The access token to refresh
+     * @param clientToken The client token it was issued to
+     * @return The refreshed {@link Session}, which may lack a profile, or
+     *         {@code null} if the server rejected the token with a 401 or
+     *         403
+     * @throws AuthException If the server could not be reached or answered
+     *                       otherwise; see {@link AuthException#isRetryable()}
+     */
+    public Session refresh(String accessToken, String clientToken) throws AuthException {
+        if (accessToken == null) {
+            return null;
+        }
+        AuthCodec codec = AuthCodec.get().begin().field("accessToken", accessToken).field("clientToken", clientToken).close();
+        Response res = this.exchange("refresh", codec);
+        if (res.code == HttpURLConnection.HTTP_OK) {
+            return codec.session(clientToken, res.code);
+        }
+        if (AuthClient.isRejection(res.code)) {
+            return null;
+        }
+        throw codec.error("Refreshing failed", res.code, res.retryAfter);
+    }
+
+    /**
+     * Posts a request, turning a failure to reach the server into a
+     * retryable {@link AuthException}
+     *
+     * @param endpoint The endpoint name, relative to the base url
+     * @param codec The {@link AuthCodec} holding the request
+     * @return The response code and requested wait
+     * @throws AuthException If the server could not be reached
+     */
+    private Response exchange(String endpoint, AuthCodec codec) throws AuthException {
+        try {
+            return this.post(endpoint, codec);
+        } catch (AuthException ex) {
+            throw ex;
+        } catch (IOException ex) {
+            AuthException back = new AuthException("Could not reach the authentication server: " + ex.getMessage(), -1, -1);
+            back.initCause(ex);
+            throw back;
+        }
+    }
+
+    /**
+     * Returns whether a status means the server rejected the token itself
+     *
+     * @param code The HTTP status
+     * @return {@code true} for 401 and 403
+     */
+    private static boolean isRejection(int code) {
+        return code == HttpURLConnection.HTTP_UNAUTHORIZED || code == HttpURLConnection.HTTP_FORBIDDEN;
+    }
+
+    /**
+     * Posts the request encoded in a codec to an endpoint of the
+     * authentication server, and decodes the response into the same codec.
+     * The response is always read to the end, so that the connection goes
+     * back to the JVM's keep-alive pool and the next request to the server
+     * reuses it.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param endpoint The endpoint name, relative to the base url
+     * @param codec The {@link AuthCodec} holding the request
+     * @return The response code and requested wait
+     * @throws IOException Connection failure
+     */
+    private Response post(String endpoint, AuthCodec codec) throws IOException {
+        HttpURLConnection http = (HttpURLConnection) new URL(this.base, endpoint).openConnection();
+        http.setRequestMethod("POST");
+        http.setRequestProperty("Content-Type", "application/json");
+        http.setConnectTimeout(10000);
+        http.setReadTimeout(30000);
+        http.setDoOutput(true);
+        http.setFixedLengthStreamingMode(codec.size());
+        try (OutputStream out = http.getOutputStream()) {
+            codec.writeTo(out);
+        }
+        int code = http.getResponseCode();
+        long retryAfter = -1;
+        String header = http.getHeaderField("Retry-After");
+        if (header != null) {
+            try {
+                retryAfter = Long.parseLong(header.trim()) * 1000;
+            } catch (NumberFormatException ex) {
+                // HTTP dates are not worth supporting here
+            }
+        }
+        InputStream in = code >= 400 ? http.getErrorStream() : http.getInputStream();
+        codec.read(in);
+        return new Response(code, retryAfter);
+    }
+
+    /**
+     * A response from the authentication server
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    private static final class Response {
+
+        private final int code;
+        private final long retryAfter;
+
+        public Response(int code, long retryAfter) {
+            this.code = code;
+            this.retryAfter = retryAfter;
+        }
+
+    }
+
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Encodes requests to and decodes responses from the authentication server
+ * without building a document. Requests are written into a reusable buffer
+ * that is copied straight to the connection, and responses are streamed
+ * through a {@link ContentHandler} that keeps only the fields SimpleClient
+ * uses. Each thread has its own codec, see {@link #get()}.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+final class AuthCodec implements ContentHandler {
+
+    /** The codec of each thread */
+    private static final ThreadLocal<AuthCodec> CODECS = ThreadLocal.withInitial(AuthCodec::new);
+    /** Hex digits for escaped characters */
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    /** The encoded request */
+    private byte[] buf = new byte[512];
+    /** The length of the encoded request */
+    private int size;
+    /** Whether the next field needs a separating comma */
+    private boolean comma;
+    /** The parser, reset for every response */
+    private final JSONParser parser = new JSONParser();
+    /** Decodes response bytes, reset for every response */
+    private final Utf8Reader reader = new Utf8Reader();
+    /** The nesting depth of the value being parsed */
+    private int depth;
+    /** The key of the current top-level entry */
+    private String key;
+    /** The key of the current entry in the selected profile */
+    private String profileKey;
+    /** Whether the parser is inside the selected profile object */
+    private boolean inProfile;
+    /** The decoded access token, or {@code null} */
+    private String accessToken;
+    /** The decoded profile id, or {@code null} */
+    private String profileId;
+    /** The decoded profile name, or {@code null} */
+    private String profileName;
+    /** The decoded error type, or {@code null} */
+    private String error;
+    /** The decoded error message, or {@code null} */
+    private String errorMessage;
+
+    private AuthCodec() {}
+
+    /**
+     * Returns the codec of the calling thread
+     *
+     * @return The thread's {@link AuthCodec}
+     */
+    static AuthCodec get() {
+        return CODECS.get();
+    }
+
+    /**
+     * Starts encoding a new request object
+     *
+     * @return This instance
+     */
+    AuthCodec begin() {
+        Arrays.fill(this.buf, 0, this.size, (byte) 0);
+        this.size = 0;
+        this.comma = false;
+        this.put((byte) '{');
+        return this;
+    }
+
+    /**
+     * Adds a string field to the current object
+     *
+     * @param name The field name
+     * @param value The field value
+     * @return This instance
+     */
+    AuthCodec field(String name, String value) {
+        this.name(name);
+        this.string(value);
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Adds a number field to the current object
+     *
+     * @param name The field name
+     * @param value The field value
+     * @return This instance
+     */
+    AuthCodec field(String name, int value) {
+        this.name(name);
+        String digits = Integer.toString(value);
+        for (int i = 0; i < digits.length(); i++) {
+            this.put((byte) digits.charAt(i));
+        }
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Opens a nested object field
+     *
+     * @param name The field name
+     * @return This instance
+     */
+    AuthCodec open(String name) {
+        this.name(name);
+        this.put((byte) '{');
+        this.comma = false;
+        return this;
+    }
+
+    /**
+     * Closes the current object
+     *
+     * @return This instance
+     */
+    AuthCodec close() {
+        this.put((byte) '}');
+        this.comma = true;
+        return this;
+    }
+
+    /**
+     * Returns the length of the encoded request
+     *
+     * @return The number of bytes
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Writes the encoded request and wipes it from the buffer, since it may
+     * hold a password
+     *
+     * @param out The stream to write to
+     * @throws IOException Failure to write
+     */
+    void writeTo(OutputStream out) throws IOException {
+        try {
+            out.write(this.buf, 0, this.size);
+        } finally {
+            Arrays.fill(this.buf, 0, this.size, (byte) 0);
+            this.size = 0;
+        }
+    }
+
+    /**
+     * Decodes a response, keeping the access token, the selected profile and
+     * any error. The stream is read to the end and closed; a body that is
+     * not JSON decodes to no fields at all.
+     *
+     * @param in The response body, or {@code null} if there is none
+     * @throws IOException Failure to read the body
+     */
+    void read(InputStream in) throws IOException {
+        this.depth = 0;
+        this.key = null;
+        this.profileKey = null;
+        this.inProfile = false;
+        this.accessToken = null;
+        this.profileId = null;
+        this.profileName = null;
+        this.error = null;
+        this.errorMessage = null;
+        if (in == null) {
+            return;
+        }
+        try (InputStream is = in) {
+            this.reader.reset(is);
+            try {
+                this.parser.parse(this.reader, this);
+            } catch (ParseException ex) {
+                this.accessToken = null;
+                this.profileId = null;
+                this.profileName = null;
+            }
+            this.reader.drain();
+        }
+    }
+
+    /**
+     * Returns the session decoded from a successful response
+     *
+     * @param clientToken The client token the session was issued to
+     * @param status The HTTP status of the response
+     * @return The decoded {@link Session}
+     * @throws AuthException If the response has no access token or a
+     *                       malformed profile
+     */
+    Session session(String clientToken, int status) throws AuthException {
+        if (this.accessToken == null) {
+            throw new AuthException("The authentication server sent no access token (HTTP " + status + ")", status, -1, this.error);
+        }
+        try {
+            return new Session(this.accessToken, clientToken, this.profileId == null ? null : Session.parseId(this.profileId), this.profileName);
+        } catch (IllegalArgumentException ex) {
+            throw new AuthException(ex.getMessage(), status, -1, this.error);
+        }
+    }
+
+    /**
+     * Returns an exception describing a failed response
+     *
+     * @param action What failed, e.g. {@code "Authentication failed"}
+     * @param status The HTTP status of the response
+     * @param retryAfter The wait the server asked for, in milliseconds, or
+     *                   {@code -1}
+     * @return The {@link AuthException}
+     */
+    AuthException error(String action, int status, long retryAfter) {
+        StringBuilder sb = new StringBuilder(action).append(" (HTTP ").append(status).append(')');
+        if (this.errorMessage != null) {
+            sb.append(": ").append(this.errorMessage);
+        }
+        if (this.error != null) {
+            sb.append(" [").append(this.error).append(']');
+        }
+        return new AuthException(sb.toString(), status, retryAfter, this.error);
+    }
+
+    @Override
+    public void startJSON() {}
+
+    @Override
+    public void endJSON() {}
+
+    @Override
+    public boolean startObject() {
+        this.depth++;
+        if (this.depth == 2 && "selectedProfile".equals(this.key)) {
+            this.inProfile = true;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObject() {
+        if (this.depth == 2) {
+            this.inProfile = false;
+        }
+        this.depth--;
+        return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String name) {
+        if (this.depth == 1) {
+            this.key = name;
+        } else if (this.depth == 2 && this.inProfile) {
+            this.profileKey = name;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endObjectEntry() {
+        if (this.depth == 2) {
+            this.profileKey = null;
+        } else if (this.depth == 1) {
+            this.key = null;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startArray() {
+        this.depth++;
+        return true;
+    }
+
+    @Override
+    public boolean endArray() {
+        this.depth--;
+        return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+        if (!(value instanceof String)) {
+            return true;
+        }
+        String str = (String) value;
+        if (this.depth == 1 && this.key != null) {
+            switch (this.key) {
+                case "accessToken":
+                    this.accessToken = str;
+                    break;
+                case "error":
+                    this.error = str;
+                    break;
+                case "errorMessage":
+                    this.errorMessage = str;
+                    break;
+                default:
+                    break;
+            }
+        } else if (this.depth == 2 && this.inProfile && this.profileKey != null) {
+            if ("id".equals(this.profileKey)) {
+                this.profileId = str;
+            } else if ("name".equals(this.profileKey)) {
+                this.profileName = str;
+            }
+        }
+        return true;
+    }
+
+    private void name(String name) {
+        if (this.comma) {
+            this.put((byte) ',');
+        }
+        this.string(name);
+        this.put((byte) ':');
+    }
+
+    /**
+     * Writes a quoted string, escaping everything outside printable ASCII so
+     * that the request is always plain ASCII
+     */
+    private void string(String value) {
+        this.put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                this.put((byte) '\\');
+                this.put((byte) c);
+            } else if (c >= 0x20 && c < 0x7f) {
+                this.put((byte) c);
+            } else {
+                this.put((byte) '\\');
+                this.put((byte) 'u');
+                this.put(HEX[(c >> 12) & 0xf]);
+                this.put(HEX[(c >> 8) & 0xf]);
+                this.put(HEX[(c >> 4) & 0xf]);
+                this.put(HEX[c & 0xf]);
+            }
+        }
+        this.put((byte) '"');
+    }
+
+    private void put(byte b) {
+        if (this.size == this.buf.length) {
+            byte[] grown = Arrays.copyOf(this.buf, this.buf.length * 2);
+            Arrays.fill(this.buf, (byte) 0);
+            this.buf = grown;
+        }
+        this.buf[this.size++] = b;
+    }
+
+    /**
+     * A reusable UTF-8 {@link Reader} over a response stream
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    private static final class Utf8Reader extends Reader {
+
+        /** The decoder, reset for every stream */
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        /** Bytes read but not yet decoded */
+        private final ByteBuffer bytes = ByteBuffer.allocate(4096);
+        /** Chars decoded but not yet read */
+        private final CharBuffer chars = CharBuffer.allocate(4096);
+        /** The stream being read */
+        private InputStream in;
+        /** Whether the stream is exhausted */
+        private boolean eof;
+
+        private void reset(InputStream in) {
+            this.in = in;
+            this.eof = false;
+            this.decoder.reset();
+            this.bytes.clear().flip();
+            this.chars.clear().flip();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.chars.hasRemaining() && !this.fill()) {
+                return -1;
+            }
+            int n = Math.min(len, this.chars.remaining());
+            this.chars.get(cbuf, off, n);
+            return n;
+        }
+
+        /**
+         * Decodes more chars, reading from the stream as needed
+         *
+         * @return {@code false} at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            this.chars.clear();
+            while (this.chars.position() == 0) {
+                this.decoder.decode(this.bytes, this.chars, this.eof);
+                if (this.chars.position() > 0) {
+                    break;
+                }
+                if (this.eof) {
+                    this.decoder.flush(this.chars);
+                    break;
+                }
+                this.bytes.compact();
+                int n = this.in.read(this.bytes.array(), this.bytes.position(), this.bytes.remaining());
+                if (n < 0) {
+                    this.eof = true;
+                } else {
+                    this.bytes.position(this.bytes.position() + n);
+                }
+                this.bytes.flip();
+            }
+            this.chars.flip();
+            return this.chars.hasRemaining();
+        }
+
+        /**
+         * Reads whatever is left of the stream, so that the connection can
+         * be reused
+         */
+        private void drain() throws IOException {
+            byte[] skip = this.bytes.array();
+            while (!this.eof && this.in.read(skip, 0, skip.length) >= 0) {
+                // discard
+            }
+            this.in = null;
+        }
+
+        @Override
+        public void close() {}
+
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the authentication server rejects a request
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public class AuthException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    /** The HTTP status the server answered with, or {@code -1} */
+    private final int status;
+    /** How long the server asked clients to wait, or {@code -1} */
+    private final long retryAfter;
+    /** The error type the server reported, or {@code null} */
+    private final String error;
+
+    /**
+     * Constructs a new {@link AuthException}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param message The detail message
+     * @param status The HTTP status the server answered with, or {@code -1}
+     *               if it could not be reached
+     * @param retryAfter How long the server asked clients to wait, in
+     *                   milliseconds, or {@code -1} if it did not say
+     */
+    public AuthException(String message, int status, long retryAfter) {
+        this(message, status, retryAfter, null);
+    }
+
+    /**
+     * Constructs a new {@link AuthException} for an error the server
+     * described
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param message The detail message
+     * @param status The HTTP status the server answered with, or {@code -1}
+     *               if it could not be reached
+     * @param retryAfter How long the server asked clients to wait, in
+     *                   milliseconds, or {@code -1} if it did not say
+     * @param error The error type the server reported, e.g.
+     *              {@code ForbiddenOperationException}, or {@code null}
+     */
+    public AuthException(String message, int status, long retryAfter, String error) {
+        super(message);
+        this.status = status;
+        this.retryAfter = retryAfter;
+        this.error = error;
+    }
+
+    /**
+     * Returns the HTTP status the server answered with
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The HTTP status, or {@code -1} if the server could not be
+     *         reached
+     */
+    public int getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Returns how long the server asked clients to wait before retrying
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The wait in milliseconds, or {@code -1} if the server did not
+     *         say
+     */
+    public long getRetryAfter() {
+        return this.retryAfter;
+    }
+
+    /**
+     * Returns the error type the server reported
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The error type, e.g. {@code ForbiddenOperationException}, or
+     *         {@code null} if the server did not say
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * Returns whether the request may succeed if retried later, which is the
+     * case when the server is unreachable, rate limiting or failing
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return {@code true} for 429 and 5xx responses and unreachable servers
+     */
+    public boolean isRetryable() {
+        return this.status < 0 || this.status == 429 || this.status >= 500;
+    }
+
+}
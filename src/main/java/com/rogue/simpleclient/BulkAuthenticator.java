@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Logs in many accounts at once through a single {@link AuthClient}. Logins
+ * run concurrently up to an in-flight limit and are paced by a token bucket,
+ * one permit per attempt. Attempts that fail with a 429, a 5xx or a
+ * connection error are retried with exponential backoff and full jitter,
+ * waiting at least as long as any {@code Retry-After} the server sent.
+ * <br /><br />
+ * Requests share the JVM's keep-alive connection pool, which only keeps
+ * {@code http.maxConnections} idle connections per server (5 by default);
+ * set that system property to at least the in-flight limit so connections
+ * are not reopened between attempts.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class BulkAuthenticator {
+
+    /** Paces attempts and schedules retries for every batch */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(Launcher.daemon("SimpleClient-bulkauth"));
+    /** Runs the logins themselves; concurrency is bounded per batch */
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(Launcher.daemon("SimpleClient-auth"));
+    /** The client used for every login */
+    private final AuthClient auth;
+    /** The most logins a batch runs at once */
+    private int maxInFlight = 8;
+    /** The sustained number of attempts per second */
+    private double rate = 10;
+    /** The number of attempts that may be made back to back */
+    private int burst = 10;
+    /** The most attempts made per account */
+    private int maxAttempts = 5;
+    /** The first backoff, in milliseconds */
+    private long baseBackoff = 500;
+    /** The largest backoff, in milliseconds */
+    private long maxBackoff = 30000;
+
+    /**
+     * Constructs a new {@link BulkAuthenticator}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param auth The {@link AuthClient} to log in through
+     */
+    public BulkAuthenticator(AuthClient auth) {
+        this.auth = auth;
+    }
+
+    /**
+     * Sets the most logins that run at once. 8 by default.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxInFlight The in-flight limit
+     * @return This instance
+     */
+    public BulkAuthenticator setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Sets the token bucket that paces attempts. 10 per second with a burst
+     * of 10 by default.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param perSecond The sustained number of attempts per second
+     * @param burst The number of attempts that may be made back to back
+     * @return This instance
+     */
+    public BulkAuthenticator setRate(double perSecond, int burst) {
+        if (perSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.rate = perSecond;
+        this.burst = burst;
+        return this;
+    }
+
+    /**
+     * Sets how often a failing account is retried. By default an account is
+     * tried up to 5 times, backing off from 500 milliseconds up to 30 seconds.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxAttempts The most attempts per account
+     * @param baseMillis The backoff after the first failure
+     * @param maxMillis The largest backoff
+     * @return This instance
+     */
+    public BulkAuthenticator setRetries(int maxAttempts, long baseMillis, long maxMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoff = baseMillis;
+        this.maxBackoff = Math.max(baseMillis, maxMillis);
+        return this;
+    }
+
+    /**
+     * Logs in every account, passing each {@link Result} to the listener as
+     * soon as it is known. The listener is called from a worker thread and
+     * may be called concurrently.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param accounts The accounts to log in
+     * @param listener Receives each result as it completes, or {@code null}
+     * @return A future completing with every result, in the order of the
+     *         supplied accounts
+     */
+    public CompletableFuture<List<Result>> authenticate(List<Credentials> accounts, Consumer<Result> listener) {
+        Batch batch = new Batch(accounts, listener);
+        if (accounts.isEmpty()) {
+            batch.done.complete(Collections.emptyList());
+        } else {
+            BulkAuthenticator.SCHEDULER.execute(batch::pump);
+        }
+        return batch.done;
+    }
+
+    /**
+     * Returns how long to wait before another attempt
+     *
+     * @param attempts The number of attempts made so far
+     * @param error The failure of the last attempt
+     * @return The delay in milliseconds
+     */
+    private long backoff(int attempts, Throwable error) {
+        long cap = this.baseBackoff << Math.min(20, attempts - 1);
+        cap = Math.min(this.maxBackoff, cap < 0 ? this.maxBackoff : cap);
+        long back = ThreadLocalRandom.current().nextLong(cap + 1);
+        if (error instanceof AuthException) {
+            back = Math.max(back, ((AuthException) error).getRetryAfter());
+        }
+        return back;
+    }
+
+    private static boolean retryable(Throwable error) {
+        return error instanceof AuthException ? ((AuthException) error).isRetryable() : error instanceof IOException;
+    }
+
+    /**
+     * A single call to {@link #authenticate(List, Consumer)}. Dispatching
+     * happens only on the scheduler thread.
+     */
+    private final class Batch {
+
+        private final Job[] jobs;
+        private final Consumer<Result> listener;
+        private final CompletableFuture<List<Result>> done = new CompletableFuture<>();
+        private final Queue<Job> ready = new ArrayDeque<>();
+        private final TokenBucket bucket = new TokenBucket(BulkAuthenticator.this.rate, BulkAuthenticator.this.burst);
+        private final Result[] results;
+        private int inFlight;
+        private int remaining;
+        private boolean pumpScheduled;
+
+        public Batch(List<Credentials> accounts, Consumer<Result> listener) {
+            this.jobs = new Job[accounts.size()];
+            this.results = new Result[accounts.size()];
+            for (int i = 0; i < this.jobs.length; i++) {
+                this.jobs[i] = new Job(i, accounts.get(i));
+                this.ready.add(this.jobs[i]);
+            }
+            this.listener = listener;
+            this.remaining = this.jobs.length;
+        }
+
+        /**
+         * Starts as many ready jobs as the in-flight limit and token bucket
+         * allow, rescheduling itself for when the next token is due
+         */
+        private void pump() {
+            this.pumpScheduled = false;
+            while (this.inFlight < BulkAuthenticator.this.maxInFlight && !this.ready.isEmpty()) {
+                long wait = this.bucket.take();
+                if (wait > 0) {
+                    this.pumpScheduled = true;
+                    BulkAuthenticator.SCHEDULER.schedule(this::pump, wait, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                Job job = this.ready.poll();
+                this.inFlight++;
+                BulkAuthenticator.WORKERS.execute(() -> this.run(job));
+            }
+        }
+
+        private void run(Job job) {
+            job.attempts++;
+            Throwable error = null;
+            Session session = null;
+            try {
+                session = BulkAuthenticator.this.auth.login(job.credentials.username, job.credentials.password);
+            } catch (Throwable ex) {
+                error = ex;
+            }
+            boolean retry = error != null && job.attempts < BulkAuthenticator.this.maxAttempts
+                    && BulkAuthenticator.retryable(error);
+            if (!retry) {
+                Result res = new Result(job.credentials.username, session, error, job.attempts, System.nanoTime() - job.started);
+                this.results[job.index] = res;
+                if (this.listener != null) {
+                    try {
+                        this.listener.accept(res);
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            }
+            Throwable cause = error;
+            BulkAuthenticator.SCHEDULER.execute(() -> {
+                this.inFlight--;
+                if (retry) {
+                    BulkAuthenticator.this.auth.getMetrics().authRetried();
+                    BulkAuthenticator.SCHEDULER.schedule(() -> {
+                        this.ready.add(job);
+                        this.wake();
+                    }, BulkAuthenticator.this.backoff(job.attempts, cause), TimeUnit.MILLISECONDS);
+                } else if (--this.remaining == 0) {
+                    this.done.complete(Collections.unmodifiableList(Arrays.asList(this.results)));
+                    return;
+                }
+                this.wake();
+            });
+        }
+
+        private void wake() {
+            if (!this.pumpScheduled) {
+                this.pump();
+            }
+        }
+
+    }
+
+    /**
+     * An account waiting to be logged in
+     */
+    private static final class Job {
+
+        private final int index;
+        private final Credentials credentials;
+        private final long started = System.nanoTime();
+        private int attempts;
+
+        public Job(int index, Credentials credentials) {
+            this.index = index;
+            this.credentials = credentials;
+        }
+
+    }
+
+    /**
+     * A token bucket, only touched from the scheduler thread
+     */
+    private static final class TokenBucket {
+
+        private final double perNano;
+        private final double capacity;
+        private double tokens;
+        private long last = System.nanoTime();
+
+        public TokenBucket(double perSecond, int burst) {
+            this.perNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = burst;
+            this.tokens = burst;
+        }
+
+        /**
+         * Takes a token if one is available
+         *
+         * @return {@code 0} if a token was taken, otherwise the nanoseconds
+         *         until one will be
+         */
+        public long take() {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.capacity, this.tokens + (now - this.last) * this.perNano);
+            this.last = now;
+            if (this.tokens >= 1) {
+                this.tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - this.tokens) / this.perNano));
+        }
+
+    }
+
+    /**
+     * An account to log in
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static final class Credentials {
+
+        /** The username/email to log in with */
+        private final String username;
+        /** The password to log in with */
+        private final String password;
+
+        /**
+         * Constructs a new {@link Credentials}
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @param username The username/email to log in with
+         * @param password The password to log in with
+         */
+        public Credentials(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        /**
+         * Returns the username/email to log in with
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The username
+         */
+        public String getUsername() {
+            return this.username;
+        }
+
+        @Override
+        public String toString() {
+            return "Credentials{" + this.username + "}";
+        }
+
+    }
+
+    /**
+     * The outcome of logging in a single account
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static final class Result {
+
+        /** The account's username/email */
+        private final String username;
+        /** The session, or {@code null} if the login failed */
+        private final Session session;
+        /** Why the login failed, or {@code null} */
+        private final Throwable error;
+        /** The number of attempts made */
+        private final int attempts;
+        /** The time from queueing until the result, in nanoseconds */
+        private final long nanos;
+
+        Result(String username, Session session, Throwable error, int attempts, long nanos) {
+            this.username = username;
+            this.session = session;
+            this.error = error;
+            this.attempts = attempts;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Returns the account's username/email
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The username
+         */
+        public String getUsername() {
+            return this.username;
+        }
+
+        /**
+         * Returns the session the account was logged in with
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The session, or {@code null} if the login failed
+         */
+        public Session getSession() {
+            return this.session;
+        }
+
+        /**
+         * Returns why the login failed
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The failure, or {@code null} if the login succeeded
+         */
+        public Throwable getError() {
+            return this.error;
+        }
+
+        /**
+         * Returns whether the login succeeded
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return {@code true} if a session was obtained
+         */
+        public boolean isSuccess() {
+            return this.error == null;
+        }
+
+        /**
+         * Returns the number of attempts made for the account
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The attempt count
+         */
+        public int getAttempts() {
+            return this.attempts;
+        }
+
+        /**
+         * Returns the time from submitting the batch until this result
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The elapsed time in nanoseconds
+         */
+        public long getNanos() {
+            return this.nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" + this.username + ", " + (this.error == null ? "ok" : this.error.toString())
+                    + ", attempts=" + this.attempts + "}";
+        }
+
+    }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages class-data-sharing archives for client JVMs. Each archive belongs
+ * to a version and a hash of its resolved classpath (paths, sizes and
+ * modification times) and of the java version, so any change to either
+ * selects a new archive and the old ones for that version are removed.
+ * <br /><br />
+ * The first launch without an archive is a training run: it is started with
+ * {@code -XX:ArchiveClassesAtExit}, and once it exits the dumped archive is
+ * moved into place. Later launches map it with {@code -XX:SharedArchiveFile},
+ * so every client on the host shares the same read-only class pages. Dynamic
+ * archives need java 13 or newer; older runtimes get no flags at all.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class ClassDataSharing {
+
+    /** The first java release that can dump a dynamic archive at exit */
+    private static final int MIN_JAVA = 13;
+    /** Matches the version in the first line of {@code java -version} */
+    private static final Pattern VERSION = Pattern.compile("version \"([^\"]+)\"");
+    /** Probed java versions, keyed by executable */
+    private static final ConcurrentMap<String, String> JAVA_VERSIONS = new ConcurrentHashMap<>();
+    /** Archives currently being trained within this process */
+    private static final Set<String> TRAINING = ConcurrentHashMap.newKeySet();
+    /** The folder archives are kept in */
+    private final File directory;
+    /** The java executable clients are started with */
+    private final String java;
+
+    /**
+     * Constructs a new {@link ClassDataSharing}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param directory The folder to keep archives in
+     * @param java The java executable clients are started with
+     */
+    public ClassDataSharing(File directory, String java) {
+        this.directory = directory;
+        this.java = java;
+    }
+
+    /**
+     * Returns an instance keeping its archives in the supplied minecraft
+     * directory, for clients started with {@code java} from the path
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @return A {@link ClassDataSharing} for the directory
+     */
+    public static ClassDataSharing forDirectory(File minecraftDir) {
+        return new ClassDataSharing(new File(new File(minecraftDir, "simpleclient"), "cds"), "java");
+    }
+
+    /**
+     * Works out the sharing flags for the next launch of a plan
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} about to be launched
+     * @return The {@link Use} describing the flags to add
+     * @throws IOException Failure to prepare the archive folder
+     */
+    public Use prepare(LaunchPlan plan) throws IOException {
+        String javaVersion = this.javaVersion();
+        if (javaVersion == null || ClassDataSharing.major(javaVersion) < MIN_JAVA) {
+            return new Use(Collections.emptyList(), null, null);
+        }
+        String prefix = plan.getVersion() + "-";
+        File archive = new File(this.directory, prefix + ClassDataSharing.hash(plan, javaVersion) + ".jsa");
+        if (archive.isFile() && archive.length() > 0) {
+            return new Use(Arrays.asList("-XX:SharedArchiveFile=" + archive.getPath(), "-Xshare:auto"), null, null);
+        }
+        if (!TRAINING.add(archive.getAbsolutePath())) {
+            return new Use(Collections.emptyList(), null, null);
+        }
+        try {
+            Files.createDirectories(this.directory.toPath());
+            Path dump = Files.createTempFile(this.directory.toPath(), prefix, ".jsa.tmp");
+            return new Use(Collections.singletonList("-XX:ArchiveClassesAtExit=" + dump), dump, archive);
+        } catch (IOException ex) {
+            TRAINING.remove(archive.getAbsolutePath());
+            throw ex;
+        }
+    }
+
+    /**
+     * Removes the archives of a version that no longer match its classpath
+     *
+     * @param version The minecraft version
+     * @param keep The archive to keep
+     */
+    private void prune(String version, File keep) {
+        String prefix = version + "-";
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(".jsa")
+                && name.indexOf('-', prefix.length()) < 0);
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (!f.equals(keep) && !f.delete()) {
+                System.err.println("Unable to remove stale class archive " + f);
+            }
+        }
+    }
+
+    /**
+     * Returns the version reported by the java executable, probing it once
+     *
+     * @return The version string, or {@code null} if it could not be probed
+     */
+    private String javaVersion() {
+        return ClassDataSharing.javaVersion(this.java);
+    }
+
+    /**
+     * Returns the version reported by a java executable, probing each
+     * executable once per process
+     *
+     * @param java The java executable
+     * @return The version string, or {@code null} if it could not be probed
+     */
+    static String javaVersion(String java) {
+        String back = JAVA_VERSIONS.get(java);
+        if (back == null) {
+            back = ClassDataSharing.probe(java);
+            JAVA_VERSIONS.putIfAbsent(java, back);
+        }
+        return back.isEmpty() ? null : back;
+    }
+
+    private static String probe(String java) {
+        try {
+            Process p = new ProcessBuilder(java, "-version").redirectErrorStream(true).start();
+            String back = "";
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = r.readLine()) != null) {
+                    Matcher m = VERSION.matcher(line);
+                    if (back.isEmpty() && m.find()) {
+                        back = m.group(1);
+                    }
+                }
+            }
+            p.waitFor();
+            return back;
+        } catch (IOException ex) {
+            System.err.println("Unable to probe java version of " + java + ": " + ex.getMessage());
+            return "";
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    /**
+     * Returns the major release of a java version string, treating the old
+     * {@code 1.x} scheme as {@code x}
+     *
+     * @param version The version string
+     * @return The major release, or {@code -1} if it cannot be parsed
+     */
+    static int major(String version) {
+        String[] parts = version.split("[._+-]");
+        try {
+            int first = Integer.parseInt(parts[0]);
+            return first == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : first;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static String hash(LaunchPlan plan, String javaVersion) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is unavailable", ex);
+        }
+        md.update(javaVersion.getBytes(StandardCharsets.UTF_8));
+        for (String entry : plan.getClasspath()) {
+            File f = new File(entry);
+            md.update((File.pathSeparator + entry + ':' + f.length() + ':' + f.lastModified()).getBytes(StandardCharsets.UTF_8));
+        }
+        return Hashing.hex(md.digest()).substring(0, 16);
+    }
+
+    /**
+     * The sharing flags for a single launch, and for a training run the
+     * bookkeeping needed to install the archive once the client exits
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public final class Use {
+
+        /** The flags to add to the JVM arguments */
+        private final List<String> flags;
+        /** Where a training run dumps its archive, or {@code null} */
+        private final Path dump;
+        /** Where the trained archive is installed, or {@code null} */
+        private final File archive;
+
+        private Use(List<String> flags, Path dump, File archive) {
+            this.flags = Collections.unmodifiableList(flags);
+            this.dump = dump;
+            this.archive = archive;
+        }
+
+        /**
+         * Returns the flags to add to the JVM arguments
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return An unmodifiable list of flags, possibly empty
+         */
+        public List<String> getFlags() {
+            return this.flags;
+        }
+
+        /**
+         * Returns whether this launch is a training run
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return {@code true} if the launch dumps a new archive
+         */
+        public boolean isTraining() {
+            return this.dump != null;
+        }
+
+        /**
+         * Installs the archive dumped by a training run, if there is one.
+         * Must be called once the client has exited or failed to start.
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         */
+        public void finish() {
+            if (this.dump == null) {
+                return;
+            }
+            try {
+                if (Files.size(this.dump) > 0) {
+                    try {
+                        Files.move(this.dump, this.archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (AtomicMoveNotSupportedException ex) {
+                        Files.move(this.dump, this.archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    String name = this.archive.getName();
+                    ClassDataSharing.this.prune(name.substring(0, name.lastIndexOf('-')), this.archive);
+                }
+                Files.deleteIfExists(this.dump);
+            } catch (IOException ex) {
+                System.err.println("Unable to install class archive " + this.archive + ": " + ex.getMessage());
+            } finally {
+                TRAINING.remove(this.archive.getAbsolutePath());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Merges the classpath of a version into a single uncompressed jar, so that
+ * a client JVM opens and indexes one file and reads classes without
+ * inflating them. Each merged jar belongs to a version and a hash of its
+ * classpath (paths, sizes and modification times), so it is only rebuilt
+ * when a library changes, and the old ones for that version are removed.
+ * <br /><br />
+ * Entries keep the classpath order: when several jars hold the same entry,
+ * the first one wins, as it would on the original classpath. Duplicates
+ * with differing content are written to a {@code .conflicts} file beside
+ * the merged jar. Service files are concatenated instead, and signature
+ * files are dropped, since they cannot match the merged jar.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class ClasspathMerger {
+
+    /** Bumped whenever the merged layout changes, to force a rebuild */
+    private static final int FORMAT = 1;
+    /** The folder holding service provider files */
+    private static final String SERVICES = "META-INF/services/";
+    /** The folder holding versioned entries of multi-release jars */
+    private static final String VERSIONS = "META-INF/versions/";
+    /** Jars being merged within this process, mapped to their build locks */
+    private static final ConcurrentMap<String, Object> BUILDING = new ConcurrentHashMap<>();
+    /** The folder merged jars are kept in */
+    private final File directory;
+
+    /**
+     * Constructs a new {@link ClasspathMerger}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param directory The folder to keep merged jars in
+     */
+    public ClasspathMerger(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns an instance keeping its merged jars in the supplied minecraft
+     * directory
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @return A {@link ClasspathMerger} for the directory
+     */
+    public static ClasspathMerger forDirectory(File minecraftDir) {
+        return new ClasspathMerger(new File(new File(minecraftDir, "simpleclient"), "classpath"));
+    }
+
+    /**
+     * Returns a plan launching the supplied plan's classpath from a single
+     * merged jar, building the jar if its classpath changed. Plans that do
+     * not pass their classpath as an argument are returned as they are.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} to merge the classpath of
+     * @return A {@link LaunchPlan} for the merged jar
+     * @throws IOException Failure to read a library or to write the jar
+     */
+    public LaunchPlan merge(LaunchPlan plan) throws IOException {
+        String prefix = plan.getVersion() + "-";
+        File jar = new File(this.directory, prefix + ClasspathMerger.hash(plan) + ".jar");
+        LaunchPlan back = plan.withClasspath(Collections.singletonList(jar.getPath()));
+        if (back == null || jar.isFile()) {
+            return back == null ? plan : back;
+        }
+        Object lock = BUILDING.computeIfAbsent(jar.getAbsolutePath(), k -> new Object());
+        try {
+            synchronized (lock) {
+                if (!jar.isFile()) {
+                    this.build(plan.getClasspath(), jar);
+                    this.prune(plan.getVersion(), jar);
+                }
+            }
+        } finally {
+            BUILDING.remove(jar.getAbsolutePath(), lock);
+        }
+        return back;
+    }
+
+    /**
+     * Writes the merged jar for a classpath
+     *
+     * @param classpath The classpath entries, in order
+     * @param jar The merged jar to write
+     * @throws IOException Failure to read a library or to write the jar
+     */
+    private void build(List<String> classpath, File jar) throws IOException {
+        Files.createDirectories(this.directory.toPath());
+        List<ZipFile> zips = new ArrayList<>(classpath.size());
+        Path tmp = Files.createTempFile(this.directory.toPath(), jar.getName(), ".tmp");
+        try {
+            boolean multiRelease = false;
+            List<Boolean> versioned = new ArrayList<>(classpath.size());
+            for (String entry : classpath) {
+                ZipFile zip = new ZipFile(entry);
+                zips.add(zip);
+                boolean mr = ClasspathMerger.isMultiRelease(zip);
+                versioned.add(mr);
+                multiRelease |= mr;
+            }
+            Map<String, String> origins = new HashMap<>();
+            Map<String, ZipEntry> written = new HashMap<>();
+            Map<String, Set<String>> services = new LinkedHashMap<>();
+            List<String> conflicts = new ArrayList<>();
+            byte[] buf = new byte[64 * 1024];
+            try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+                out.setMethod(ZipOutputStream.STORED);
+                ClasspathMerger.put(out, JarFile.MANIFEST_NAME, ClasspathMerger.manifest(multiRelease));
+                for (int i = 0; i < zips.size(); i++) {
+                    ZipFile zip = zips.get(i);
+                    boolean skipVersions = multiRelease && !versioned.get(i);
+                    for (ZipEntry in : Collections.list(zip.entries())) {
+                        String name = in.getName();
+                        if (ClasspathMerger.isDropped(name) || (skipVersions && name.startsWith(VERSIONS))) {
+                            continue;
+                        }
+                        if (name.startsWith(SERVICES) && !in.isDirectory() && name.indexOf('/', SERVICES.length()) < 0) {
+                            ClasspathMerger.readServices(zip, in, services.computeIfAbsent(name, k -> new LinkedHashSet<>()));
+                            continue;
+                        }
+                        ZipEntry prev = written.get(name);
+                        if (prev != null) {
+                            if (!in.isDirectory() && (prev.getCrc() != in.getCrc() || prev.getSize() != in.getSize())) {
+                                conflicts.add(name + ": kept " + origins.get(name) + ", ignored " + zip.getName());
+                            }
+                            continue;
+                        }
+                        ZipEntry copy = ClasspathMerger.copy(zip, in, out, buf);
+                        written.put(name, copy);
+                        origins.put(name, zip.getName());
+                    }
+                }
+                for (Map.Entry<String, Set<String>> service : services.entrySet()) {
+                    StringBuilder sb = new StringBuilder();
+                    for (String provider : service.getValue()) {
+                        sb.append(provider).append('\n');
+                    }
+                    ClasspathMerger.put(out, service.getKey(), sb.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            File report = new File(this.directory, jar.getName().substring(0, jar.getName().length() - 4) + ".conflicts");
+            if (conflicts.isEmpty()) {
+                Files.deleteIfExists(report.toPath());
+            } else {
+                Files.write(report.toPath(), conflicts, StandardCharsets.UTF_8);
+                System.err.println(conflicts.size() + " conflicting classpath entries while merging " + jar.getName() + ", see " + report);
+            }
+            try {
+                Files.move(tmp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            for (ZipFile zip : zips) {
+                zip.close();
+            }
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Removes the merged jars of a version that no longer match its
+     * classpath, along with their conflict reports
+     *
+     * @param version The minecraft version
+     * @param keep The merged jar to keep
+     */
+    private void prune(String version, File keep) {
+        String prefix = version + "-";
+        String kept = keep.getName().substring(0, keep.getName().length() - 4);
+        File[] files = this.directory.listFiles((dir, name) -> name.startsWith(prefix)
+                && (name.endsWith(".jar") || name.endsWith(".conflicts"))
+                && name.indexOf('-', prefix.length()) < 0 && !name.startsWith(kept + "."));
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (!f.delete()) {
+                System.err.println("Unable to remove stale merged classpath " + f);
+            }
+        }
+    }
+
+    /**
+     * Returns whether an entry is left out of the merged jar: manifests and
+     * signatures, which belong to their own jar, and module descriptors,
+     * which mean nothing on the classpath
+     *
+     * @param name The entry name
+     * @return {@code true} if the entry is dropped
+     */
+    private static boolean isDropped(String name) {
+        if (name.endsWith("module-info.class") && (name.length() == 17 || name.startsWith(VERSIONS))) {
+            return true;
+        }
+        if (!name.startsWith("META-INF/") || name.indexOf('/', 9) >= 0) {
+            return false;
+        }
+        String upper = name.toUpperCase();
+        return upper.equals(JarFile.MANIFEST_NAME) || upper.equals("META-INF/INDEX.LIST")
+                || upper.endsWith(".SF") || upper.endsWith(".RSA") || upper.endsWith(".DSA")
+                || upper.endsWith(".EC") || upper.startsWith("META-INF/SIG-");
+    }
+
+    private static boolean isMultiRelease(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+        if (entry == null) {
+            return false;
+        }
+        try (InputStream in = zip.getInputStream(entry)) {
+            return "true".equalsIgnoreCase(new Manifest(in).getMainAttributes().getValue("Multi-Release"));
+        }
+    }
+
+    private static byte[] manifest(boolean multiRelease) throws IOException {
+        Manifest man = new Manifest();
+        Attributes attrs = man.getMainAttributes();
+        attrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attrs.putValue("Created-By", "SimpleClient");
+        if (multiRelease) {
+            attrs.putValue("Multi-Release", "true");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        man.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Adds the providers of a service file, skipping comments and providers
+     * already listed by an earlier jar
+     */
+    private static void readServices(ZipFile zip, ZipEntry entry, Set<String> into) throws IOException {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String provider = (comment < 0 ? line : line.substring(0, comment)).trim();
+                if (!provider.isEmpty()) {
+                    into.add(provider);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies an entry into the merged jar, stored as it is
+     *
+     * @return The entry as written
+     */
+    private static ZipEntry copy(ZipFile zip, ZipEntry in, ZipOutputStream out, byte[] buf) throws IOException {
+        ZipEntry entry = new ZipEntry(in.getName());
+        entry.setMethod(ZipEntry.STORED);
+        entry.setTime(in.getTime());
+        entry.setSize(in.getSize());
+        entry.setCompressedSize(in.getSize());
+        entry.setCrc(in.getCrc());
+        out.putNextEntry(entry);
+        if (!in.isDirectory()) {
+            try (InputStream data = zip.getInputStream(in)) {
+                int read;
+                while ((read = data.read(buf)) > 0) {
+                    out.write(buf, 0, read);
+                }
+            }
+        }
+        out.closeEntry();
+        return entry;
+    }
+
+    private static void put(ZipOutputStream out, String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static String hash(LaunchPlan plan) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is unavailable", ex);
+        }
+        md.update(Integer.toString(FORMAT).getBytes(StandardCharsets.UTF_8));
+        for (String entry : plan.getClasspath()) {
+            File f = new File(entry);
+            md.update((File.pathSeparator + entry + ':' + f.length() + ':' + f.lastModified()).getBytes(StandardCharsets.UTF_8));
+        }
+        return Hashing.hex(md.digest()).substring(0, 16);
+    }
+
+}
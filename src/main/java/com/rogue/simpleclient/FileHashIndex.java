@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent record of file hashes, keyed by path and only trusted while
+ * the file keeps the size and modification time it was hashed at. This lets
+ * unchanged files be verified with a single {@code stat} instead of being
+ * read again.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class FileHashIndex {
+
+    /** Loaded indexes, so that each file is only read once per process */
+    private static final ConcurrentMap<String, FileHashIndex> LOADED = new ConcurrentHashMap<>();
+    /** Marks an index file */
+    private static final int MAGIC = 0x53434849;
+    /** The index format, bumped whenever the layout changes */
+    private static final int FORMAT = 1;
+    /** The file the index persists to */
+    private final File file;
+    /** The indexed entries, keyed by absolute path */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Whether there are entries that have not been saved yet */
+    private volatile boolean dirty;
+
+    private FileHashIndex(File file) {
+        this.file = file.getAbsoluteFile();
+        this.entries.putAll(FileHashIndex.read(this.file));
+    }
+
+    /**
+     * Returns the index persisted to a file, loading it on first use
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param file The index file, which does not need to exist
+     * @return The {@link FileHashIndex} for the file
+     */
+    public static FileHashIndex of(File file) {
+        return LOADED.computeIfAbsent(file.getAbsolutePath(), k -> new FileHashIndex(file));
+    }
+
+    /**
+     * Returns the recorded SHA-1 of a file, if it was recorded at the file's
+     * current size and modification time
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param path The file
+     * @param size The file's current size
+     * @param mtime The file's current modification time
+     * @return The recorded hash, or {@code null} if unknown or stale
+     */
+    public String lookup(File path, long size, long mtime) {
+        Entry e = this.entries.get(path.getAbsolutePath());
+        return e != null && e.size == size && e.mtime == mtime ? e.sha1 : null;
+    }
+
+    /**
+     * Records the SHA-1 of a file at its current size and modification time
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param path The file
+     * @param size The file's size when hashed
+     * @param mtime The file's modification time when hashed
+     * @param sha1 The file's hash
+     */
+    public void record(File path, long size, long mtime, String sha1) {
+        this.entries.put(path.getAbsolutePath(), new Entry(size, mtime, sha1));
+        this.dirty = true;
+    }
+
+    /**
+     * Returns the SHA-1 of a file, hashing it only if no valid record exists
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param path The file to hash
+     * @return The file's hash
+     * @throws IOException Failure to read the file
+     */
+    public String hash(File path) throws IOException {
+        long size = path.length();
+        long mtime = path.lastModified();
+        String back = this.lookup(path, size, mtime);
+        if (back == null) {
+            back = Hashing.sha1(path);
+            if (path.length() == size && path.lastModified() == mtime) {
+                this.record(path, size, mtime, back);
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Forgets the record of a file
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param path The file to forget
+     */
+    public void forget(File path) {
+        if (this.entries.remove(path.getAbsolutePath()) != null) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index to disk if it has changed. Records written by other
+     * processes in the meantime are kept.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @throws IOException Failure to write the index
+     */
+    public synchronized void save() throws IOException {
+        if (!this.dirty) {
+            return;
+        }
+        this.dirty = false;
+        FileHashIndex.read(this.file).forEach(this.entries::putIfAbsent);
+        Path target = this.file.toPath();
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), this.file.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                Map<String, Entry> snapshot = new HashMap<>(this.entries);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().mtime);
+                    out.writeUTF(e.getValue().sha1);
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Map<String, Entry> read(File file) {
+        Map<String, Entry> back = new HashMap<>();
+        if (!file.isFile()) {
+            return back;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return back;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                back.put(in.readUTF(), new Entry(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (IOException ex) {
+            System.err.println("Ignoring unreadable hash index " + file + ": " + ex.getMessage());
+        }
+        return back;
+    }
+
+    private static final class Entry {
+
+        private final long size;
+        private final long mtime;
+        private final String sha1;
+
+        public Entry(long size, long mtime, String sha1) {
+            this.size = size;
+            this.mtime = mtime;
+            this.sha1 = sha1;
+        }
+
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link LogSink} that appends lines to a file, rotating it once it grows
+ * past a size limit. Lines are queued by the pump thread and written in
+ * batches by a single writer thread shared between all file sinks. If the
+ * queue fills up, new lines are dropped rather than buffered without bound.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class FileLogSink implements LogSink {
+
+    /** The writer thread shared by every file sink */
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SimpleClient-logwriter");
+        t.setDaemon(true);
+        return t;
+    });
+    /** The file being written to */
+    private final File file;
+    /** The size after which the file is rotated */
+    private final long maxBytes;
+    /** The number of rotated files to keep */
+    private final int backups;
+    /** Lines waiting to be written */
+    private final BlockingQueue<LogLine> queue;
+    /** Lines dropped because the queue was full */
+    private final AtomicLong dropped = new AtomicLong();
+    /** The periodic flush task */
+    private final ScheduledFuture<?> task;
+    /** Formats line timestamps, only used on the writer thread */
+    private final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+    /** The open writer, only used on the writer thread */
+    private Writer out;
+    /** Bytes written to the current file, only used on the writer thread */
+    private long written;
+    /** Dropped lines already noted in the file, only used on the writer thread */
+    private long reported;
+
+    /**
+     * Constructs a new {@link FileLogSink}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param file The file to append to
+     * @param maxBytes The size after which to rotate the file
+     * @param backups The number of rotated files to keep
+     */
+    public FileLogSink(File file, long maxBytes, int backups) {
+        this(file, maxBytes, backups, 8192, 250);
+    }
+
+    /**
+     * Constructs a new {@link FileLogSink}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param file The file to append to
+     * @param maxBytes The size after which to rotate the file
+     * @param backups The number of rotated files to keep
+     * @param queueSize The number of lines that may wait to be written
+     * @param flushMillis How often queued lines are written
+     */
+    public FileLogSink(File file, long maxBytes, int backups, int queueSize, long flushMillis) {
+        this.file = file.getAbsoluteFile();
+        this.maxBytes = maxBytes;
+        this.backups = Math.max(0, backups);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.task = WRITER.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void accept(LogLine line) {
+        if (!this.queue.offer(line)) {
+            this.dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of lines dropped because the writer fell behind
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The dropped line count
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Writes out any queued lines and closes the file. Lines accepted after
+     * this are discarded.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public void close() {
+        this.task.cancel(false);
+        try {
+            WRITER.submit(() -> {
+                this.flush();
+                this.closeWriter();
+            }).get();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes all queued lines in one batch. Runs on the writer thread.
+     */
+    private void flush() {
+        List<LogLine> batch = new ArrayList<>(this.queue.size());
+        this.queue.drainTo(batch);
+        long total = this.dropped.get();
+        long lost = total - this.reported;
+        this.reported = total;
+        if (batch.isEmpty() && lost == 0) {
+            return;
+        }
+        try {
+            if (lost > 0) {
+                this.write("[" + this.format.format(new Date()) + "] [SimpleClient] " + lost + " lines dropped\n");
+            }
+            for (LogLine line : batch) {
+                this.write("[" + this.format.format(new Date(line.getTime())) + "] ["
+                        + line.getInstance() + "/" + line.getSource() + "] " + line.getText() + "\n");
+            }
+            if (this.out != null) {
+                this.out.flush();
+            }
+        } catch (IOException ex) {
+            System.err.println("Failed to write client log " + this.file + ": " + ex.getMessage());
+            this.closeWriter();
+        }
+    }
+
+    private void write(String s) throws IOException {
+        if (this.out == null) {
+            this.open();
+        } else if (this.written >= this.maxBytes) {
+            this.closeWriter();
+            this.rotate();
+            this.open();
+        }
+        this.out.write(s);
+        this.written += FileLogSink.utf8Length(s);
+    }
+
+    /**
+     * Returns the number of bytes a string takes up in UTF-8, without
+     * encoding it
+     *
+     * @param s The string to measure
+     * @return The encoded length in bytes
+     */
+    static long utf8Length(String s) {
+        long bytes = 0;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++; // unpaired surrogates are replaced with '?'
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private void open() throws IOException {
+        File parent = this.file.getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        this.written = this.file.length();
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, true), StandardCharsets.UTF_8));
+    }
+
+    private void rotate() throws IOException {
+        if (this.backups == 0) {
+            Files.deleteIfExists(this.file.toPath());
+            return;
+        }
+        for (int i = this.backups - 1; i >= 1; i--) {
+            File from = new File(this.file.getPath() + "." + i);
+            if (from.exists()) {
+                Files.move(from.toPath(), new File(this.file.getPath() + "." + (i + 1)).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(this.file.toPath(), new File(this.file.getPath() + ".1").toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void closeWriter() {
+        if (this.out != null) {
+            try {
+                this.out.close();
+            } catch (IOException ignored) {
+            }
+            this.out = null;
+        }
+    }
+
+}
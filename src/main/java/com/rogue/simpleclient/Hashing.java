@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-1 helpers shared by the verification stages
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+final class Hashing {
+
+    /** The largest region mapped at once */
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+    /** Per-thread digest, reset before each use */
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    });
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Hashing() {
+    }
+
+    /**
+     * Computes the SHA-1 of a file by memory-mapping it
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param file The file to hash
+     * @return The lowercase hex SHA-1 of the file
+     * @throws IOException Failure to read the file
+     */
+    public static String sha1(File file) throws IOException {
+        MessageDigest md = SHA1.get();
+        md.reset();
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (long pos = 0; pos < size; pos += MAP_CHUNK) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAP_CHUNK, size - pos));
+                md.update(buf);
+            }
+        }
+        return Hashing.hex(md.digest());
+    }
+
+    /**
+     * Converts bytes to lowercase hex
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param bytes The bytes to convert
+     * @return The hex string
+     */
+    public static String hex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations. Values are kept in microseconds in
+ * log-linear buckets, eight per power of two, so percentiles are accurate to
+ * within about 12% from a microsecond up to several hours while the whole
+ * histogram stays a few kilobytes.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LatencyHistogram {
+
+    /** The number of sub-buckets per power of two, as a power of two */
+    private static final int SUB_BITS = 3;
+    /** The number of sub-buckets per power of two */
+    private static final int SUB = 1 << SUB_BITS;
+    /** The number of buckets, covering values up to 2^40 microseconds */
+    private static final int BUCKETS = (40 - SUB_BITS + 1) * SUB;
+    /** The count of values in each bucket */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /** The number of values recorded */
+    private final AtomicLong count = new AtomicLong();
+    /** The sum of all values, in nanoseconds */
+    private final AtomicLong sum = new AtomicLong();
+    /** The largest value, in nanoseconds */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        this.counts.incrementAndGet(LatencyHistogram.bucket(v / 1000));
+        this.count.incrementAndGet();
+        this.sum.addAndGet(v);
+        long m;
+        while (v > (m = this.max.get()) && !this.max.compareAndSet(m, v)) {
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns the mean duration
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The mean in nanoseconds, or {@code 0} if empty
+     */
+    public long getMean() {
+        long c = this.count.get();
+        return c == 0 ? 0 : this.sum.get() / c;
+    }
+
+    /**
+     * Returns the longest duration
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The maximum in nanoseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns the duration below which the supplied share of values fall
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param percentile The percentile, from {@code 0} to {@code 100}
+     * @return The duration in nanoseconds, or {@code 0} if empty
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upper(i) * 1000, this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fms p50=%.1fms p99=%.1fms max=%.1fms", this.getCount(),
+                this.getMean() / 1e6, this.getPercentile(50) / 1e6, this.getPercentile(99) / 1e6, this.getMax() / 1e6);
+    }
+
+    private static int bucket(long micros) {
+        if (micros < SUB) {
+            return (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+        return Math.min(BUCKETS - 1, (exp - SUB_BITS + 1) * SUB + sub);
+    }
+
+    /**
+     * Returns the largest value, in microseconds, that falls in a bucket
+     */
+    private static long upper(int bucket) {
+        if (bucket < SUB) {
+            return bucket;
+        }
+        int exp = bucket / SUB + SUB_BITS - 1;
+        long sub = bucket % SUB;
+        return ((SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * A handle for a single client launch submitted to a {@link Launcher}. As a
+ * {@link Future}, it completes with the exit code of the client process.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LaunchHandle implements Future<Integer> {
+
+    /** The launcher this handle belongs to */
+    private final Launcher launcher;
+    /** The name of the client instance */
+    private final String name;
+    /** Starts the process */
+    private final Launcher.Spawner spawner;
+    /** Run on the launcher thread right after the process starts */
+    private final Consumer<LaunchHandle> spawnHook;
+    /** Completes once the process has started */
+    private final CompletableFuture<Process> started = new CompletableFuture<>();
+    /** Completes with the exit code once the process has exited */
+    private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+    /** The current state, guarded by {@code this} */
+    private State state = State.QUEUED;
+    /** The running process, once started */
+    private volatile Process process;
+    /** The tail of the client's output, if captured */
+    private volatile LogBuffer log;
+    /** When the launch was queued, from {@link System#nanoTime()} */
+    private final long queuedAt = System.nanoTime();
+    /** When the process was about to be started */
+    private volatile long spawningAt;
+    /** When the process had started */
+    private volatile long startedAt;
+
+    LaunchHandle(Launcher launcher, String name, Launcher.Spawner spawner, Consumer<LaunchHandle> spawnHook) {
+        this.launcher = launcher;
+        this.name = name;
+        this.spawner = spawner;
+        this.spawnHook = spawnHook;
+    }
+
+    /**
+     * Returns the name of the client instance
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The instance name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the current state of this launch
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The launch state
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the client process, or {@code null} if it has not started
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The client {@link Process}
+     */
+    public Process getProcess() {
+        return this.process;
+    }
+
+    /**
+     * Returns the buffer holding the tail of the client's output, or
+     * {@code null} if output is not being captured
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The client's {@link LogBuffer}
+     */
+    public LogBuffer getLog() {
+        return this.log;
+    }
+
+    /**
+     * Sets the buffer holding the tail of the client's output
+     *
+     * @param log The client's {@link LogBuffer}
+     */
+    void setLog(LogBuffer log) {
+        this.log = log;
+    }
+
+    /**
+     * Returns how long the launch waited in the launcher's queue
+     *
+     * @return The wait in nanoseconds, or {@code -1} if not yet started
+     */
+    long getQueueNanos() {
+        return this.spawningAt == 0 ? -1 : this.spawningAt - this.queuedAt;
+    }
+
+    /**
+     * Returns how long starting the process took
+     *
+     * @return The duration in nanoseconds, or {@code -1} if not yet started
+     */
+    long getSpawnNanos() {
+        return this.startedAt == 0 ? -1 : this.startedAt - this.spawningAt;
+    }
+
+    /**
+     * Returns when the process had started
+     *
+     * @return The {@link System#nanoTime()} after the process started, or
+     *         {@code 0} if not yet started
+     */
+    long getStartedAt() {
+        return this.startedAt;
+    }
+
+    /**
+     * Registers a callback to run once the process has started. If it has
+     * already started, the callback is run right away.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param callback The callback, receiving this handle
+     * @return This handle
+     */
+    public LaunchHandle onStart(Consumer<LaunchHandle> callback) {
+        this.started.thenAcceptAsync(p -> callback.accept(this), this.launcher.getCallbackExecutor());
+        return this;
+    }
+
+    /**
+     * Registers a callback to run with the exit code once the process exits,
+     * including when it was killed through {@link #cancel(boolean)}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param callback The callback, receiving the exit code
+     * @return This handle
+     */
+    public LaunchHandle onExit(IntConsumer callback) {
+        this.exit.thenAcceptAsync(callback::accept, this.launcher.getCallbackExecutor());
+        return this;
+    }
+
+    /**
+     * Registers a callback to run if the process could not be started
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param callback The callback, receiving the failure cause
+     * @return This handle
+     */
+    public LaunchHandle onFailure(Consumer<Throwable> callback) {
+        this.exit.whenCompleteAsync((code, ex) -> {
+            if (ex != null && !(ex instanceof CancellationException)) {
+                callback.accept(ex);
+            }
+        }, this.launcher.getCallbackExecutor());
+        return this;
+    }
+
+    /**
+     * Registers an action to run once the launch is over, whether the
+     * process exited, failed to start or was cancelled while queued
+     *
+     * @param action The action to run
+     */
+    void whenDone(Runnable action) {
+        this.exit.whenCompleteAsync((code, ex) -> action.run(), this.launcher.getCallbackExecutor());
+    }
+
+    /**
+     * Cancels the launch. A queued launch is dropped; a running client is
+     * destroyed, forcibly if {@code mayInterruptIfRunning} is set.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param mayInterruptIfRunning Whether to forcibly kill a running client
+     * @return {@code false} if the launch had already finished
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        Process p;
+        synchronized (this) {
+            switch (this.state) {
+                case QUEUED:
+                    this.state = State.CANCELLED;
+                    this.launcher.dequeue(this);
+                    this.started.cancel(false);
+                    this.exit.cancel(false);
+                    return true;
+                case RUNNING:
+                    this.state = State.CANCELLED;
+                    p = this.process;
+                    break;
+                default:
+                    return false;
+            }
+        }
+        if (mayInterruptIfRunning) {
+            p.destroyForcibly();
+        } else {
+            p.destroy();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return this.state == State.CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return this.isCancelled() || this.exit.isDone();
+    }
+
+    @Override
+    public Integer get() throws InterruptedException, ExecutionException {
+        this.checkCancelled();
+        Integer back = this.exit.get();
+        this.checkCancelled();
+        return back;
+    }
+
+    @Override
+    public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        this.checkCancelled();
+        Integer back = this.exit.get(timeout, unit);
+        this.checkCancelled();
+        return back;
+    }
+
+    /**
+     * Starts the process, unless the launch was cancelled while queued
+     *
+     * @return The started process, or {@code null} if cancelled
+     * @throws IOException Failure to start the process
+     */
+    Process start() throws IOException {
+        synchronized (this) {
+            if (this.state != State.QUEUED) {
+                return null;
+            }
+            this.spawningAt = System.nanoTime();
+            this.process = this.spawner.start();
+            this.startedAt = System.nanoTime();
+            this.state = State.RUNNING;
+        }
+        if (this.spawnHook != null) {
+            try {
+                this.spawnHook.accept(this);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+        this.started.complete(this.process);
+        return this.process;
+    }
+
+    /**
+     * Marks the process as exited
+     *
+     * @param code The exit code of the process
+     */
+    void exited(int code) {
+        synchronized (this) {
+            if (this.state == State.RUNNING) {
+                this.state = State.EXITED;
+            }
+        }
+        this.exit.complete(code);
+    }
+
+    /**
+     * Marks the launch as failed to start
+     *
+     * @param cause The failure cause
+     */
+    void failed(Throwable cause) {
+        synchronized (this) {
+            this.state = State.FAILED;
+        }
+        this.started.completeExceptionally(cause);
+        this.exit.completeExceptionally(cause);
+    }
+
+    private void checkCancelled() {
+        if (this.isCancelled()) {
+            throw new CancellationException("Launch of " + this.name + " was cancelled");
+        }
+    }
+
+    /**
+     * The lifecycle states of a launch
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum State {
+        QUEUED,
+        RUNNING,
+        EXITED,
+        FAILED,
+        CANCELLED,
+        ;
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timings of each launch phase, kept per version in {@link LatencyHistogram
+ * LatencyHistograms}, together with launch and login counters. The default
+ * instance is registered with the platform MBean server as
+ * {@code com.rogue.simpleclient:type=LaunchMetrics}.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LaunchMetrics implements LaunchMetricsMBean {
+
+    /** The name the default instance is registered under */
+    public static final String OBJECT_NAME = "com.rogue.simpleclient:type=LaunchMetrics";
+    /** The instance shared by every client unless another is set */
+    private static volatile LaunchMetrics def;
+    /** The histograms of each version, indexed by phase */
+    private final ConcurrentMap<String, LatencyHistogram[]> histograms = new ConcurrentHashMap<>();
+    /** The number of clients that were started */
+    private final AtomicLong launches = new AtomicLong();
+    /** The number of launches that failed before the client started */
+    private final AtomicLong launchFailures = new AtomicLong();
+    /** The number of logins that failed */
+    private final AtomicLong authFailures = new AtomicLong();
+    /** The number of login fallbacks */
+    private final AtomicLong authRetries = new AtomicLong();
+
+    /**
+     * Returns the shared instance, registering it with JMX on first use
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The default {@link LaunchMetrics}
+     */
+    public static LaunchMetrics getDefault() {
+        if (LaunchMetrics.def == null) {
+            synchronized (LaunchMetrics.class) {
+                if (LaunchMetrics.def == null) {
+                    LaunchMetrics m = new LaunchMetrics();
+                    try {
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(m, new ObjectName(OBJECT_NAME));
+                    } catch (JMException ex) {
+                        System.err.println("Unable to register launch metrics with JMX: " + ex.getMessage());
+                    }
+                    LaunchMetrics.def = m;
+                }
+            }
+        }
+        return LaunchMetrics.def;
+    }
+
+    /**
+     * Records the duration of a phase
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param phase The {@link Phase} that was timed
+     * @param nanos The duration in nanoseconds
+     */
+    public void record(String version, Phase phase, long nanos) {
+        this.histograms.computeIfAbsent(version, k -> {
+            LatencyHistogram[] back = new LatencyHistogram[Phase.values().length];
+            for (int i = 0; i < back.length; i++) {
+                back[i] = new LatencyHistogram();
+            }
+            return back;
+        })[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Returns the timings of a phase for a version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param phase The {@link Phase}
+     * @return The live {@link LatencyHistogram}, or {@code null} if nothing
+     *         was recorded for the version
+     */
+    public LatencyHistogram getHistogram(String version, Phase phase) {
+        LatencyHistogram[] back = this.histograms.get(version);
+        return back == null ? null : back[phase.ordinal()];
+    }
+
+    @Override
+    public long getLaunches() {
+        return this.launches.get();
+    }
+
+    @Override
+    public long getLaunchFailures() {
+        return this.launchFailures.get();
+    }
+
+    @Override
+    public long getAuthFailures() {
+        return this.authFailures.get();
+    }
+
+    @Override
+    public long getAuthRetries() {
+        return this.authRetries.get();
+    }
+
+    @Override
+    public String[] getVersions() {
+        return this.histograms.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getPhases() {
+        Phase[] phases = Phase.values();
+        String[] back = new String[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            back[i] = phases[i].name();
+        }
+        return back;
+    }
+
+    @Override
+    public long count(String version, String phase) {
+        LatencyHistogram h = this.getHistogram(version, Phase.valueOf(phase.toUpperCase()));
+        return h == null ? 0 : h.getCount();
+    }
+
+    @Override
+    public double percentileMillis(String version, String phase, double percentile) {
+        LatencyHistogram h = this.getHistogram(version, Phase.valueOf(phase.toUpperCase()));
+        return h == null ? 0 : h.getPercentile(percentile) / 1e6;
+    }
+
+    /**
+     * Counts a client that was started
+     */
+    void launched() {
+        this.launches.incrementAndGet();
+    }
+
+    /**
+     * Counts a launch that failed before the client started
+     */
+    void launchFailed() {
+        this.launchFailures.incrementAndGet();
+    }
+
+    /**
+     * Counts a failed login
+     */
+    void authFailed() {
+        this.authFailures.incrementAndGet();
+    }
+
+    /**
+     * Counts a login falling back to another request
+     */
+    void authRetried() {
+        this.authRetries.incrementAndGet();
+    }
+
+    /**
+     * Returns a sink that records the {@link Phase#READY} and
+     * {@link Phase#TOTAL} timings the first time a client prints a line
+     * matching the ready marker
+     *
+     * @param version The minecraft version
+     * @param marker The pattern marking a ready client
+     * @param began When the launch began, from {@link System#nanoTime()}
+     * @param started When the process started
+     * @return A {@link LogSink} for the client
+     */
+    LogSink readyProbe(String version, Pattern marker, long began, long started) {
+        AtomicBoolean seen = new AtomicBoolean();
+        return line -> {
+            if (!seen.get() && marker.matcher(line.getText()).find() && seen.compareAndSet(false, true)) {
+                long now = System.nanoTime();
+                this.record(version, Phase.READY, now - started);
+                this.record(version, Phase.TOTAL, now - began);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("launches=").append(this.getLaunches())
+                .append(" failures=").append(this.getLaunchFailures())
+                .append(" authFailures=").append(this.getAuthFailures())
+                .append(" authRetries=").append(this.getAuthRetries());
+        this.histograms.forEach((version, phases) -> {
+            for (Phase p : Phase.values()) {
+                if (phases[p.ordinal()].getCount() > 0) {
+                    sb.append('\n').append(version).append(' ').append(p).append(": ").append(phases[p.ordinal()]);
+                }
+            }
+        });
+        return sb.toString();
+    }
+
+    /**
+     * The timed phases of a launch
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum Phase {
+        /** Logging in, including session validation and refresh */
+        CONNECT,
+        /** Resolving the {@link LaunchPlan} */
+        PLAN,
+        /** Verifying the classpath */
+        VERIFY,
+        /** Linking libraries into the {@link LibraryStore} */
+        LINK,
+        /** Extracting natives */
+        NATIVES,
+        /** Verifying and repairing assets */
+        ASSETS,
+        /** Merging the classpath into a single jar */
+        MERGE,
+        /** Choosing JVM flags and building the command */
+        COMMAND,
+        /** Waiting in the {@link Launcher} queue */
+        QUEUE,
+        /** Starting the process */
+        SPAWN,
+        /** From process start until the client printed its ready marker */
+        READY,
+        /** From the call to launch until the client was ready */
+        TOTAL;
+    }
+
+}
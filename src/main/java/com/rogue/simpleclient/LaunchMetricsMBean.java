@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+/**
+ * The JMX view of {@link LaunchMetrics}
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public interface LaunchMetricsMBean {
+
+    /**
+     * Returns the number of clients that were started
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The launch count
+     */
+    public long getLaunches();
+
+    /**
+     * Returns the number of launches that failed before the client started
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The failed launch count
+     */
+    public long getLaunchFailures();
+
+    /**
+     * Returns the number of logins that failed
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The failed login count
+     */
+    public long getAuthFailures();
+
+    /**
+     * Returns the number of times a login fell back to another request,
+     * such as a refresh after a failed validation
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The retry count
+     */
+    public long getAuthRetries();
+
+    /**
+     * Returns the versions that have recorded timings
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The version names
+     */
+    public String[] getVersions();
+
+    /**
+     * Returns the names of the timed phases
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The phase names
+     */
+    public String[] getPhases();
+
+    /**
+     * Returns the number of timings recorded for a phase of a version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param phase The phase name
+     * @return The timing count
+     */
+    public long count(String version, String phase);
+
+    /**
+     * Returns a percentile of a phase's timings for a version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param phase The phase name
+     * @param percentile The percentile, from {@code 0} to {@code 100}
+     * @return The duration in milliseconds
+     */
+    public double percentileMillis(String version, String phase, double percentile);
+
+}
@@ -0,0 +1,542 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled, immutable launch command for a version of the Minecraft client
+ * within a given application data folder. Everything that does not depend on
+ * the user is resolved once, when the plan is compiled; each launch only
+ * fills in the per-user arguments.
+ * <br /><br />
+ * The plan is compiled from the version's manifest when there is one (see
+ * {@link ManifestLoader}), and from the built-in {@link Library} mappings
+ * otherwise. Plans are cached per version and application data folder,
+ * both in memory and on disk through a {@link PlanCache}, and are handed to
+ * {@link ProcessBuilder} as an argument list, so paths containing spaces are
+ * passed through intact.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LaunchPlan {
+
+    /** Compiled plans, keyed by version and application data folder */
+    private static final ConcurrentMap<String, LaunchPlan> CACHE = new ConcurrentHashMap<>();
+    /** Placeholders that are filled in per user, on every launch */
+    private static final String[] USER_KEYS = {
+        "${auth_player_name}", "${auth_uuid}", "${auth_access_token}", "${auth_session}"
+    };
+    /** The minecraft version this plan launches */
+    private final String version;
+    /** The resolved manifest of the version */
+    private final VersionManifest manifest;
+    /** The minecraft directory */
+    private final File minecraftDir;
+    /** The game version directory */
+    private final File gameDir;
+    /** The natives folder for the version */
+    private final File natives;
+    /** The classpath entries, in order */
+    private final List<String> classpath;
+    /** The resolved command, with placeholders left in the per-user slots */
+    private final String[] argv;
+    /** The indices of {@link #argv} that hold per-user placeholders */
+    private final int[] userSlots;
+    /** The index of an {@code --accessToken} flag to drop when offline */
+    private final int tokenFlag;
+    /** The index of the main class in {@link #argv} */
+    private final int mainIndex;
+    /** The index of the classpath value in {@link #argv}, or {@code -1} */
+    private final int classpathIndex;
+    /** The manifest files the plan was compiled from */
+    private final List<File> inputs;
+
+    /**
+     * Compiles a new {@link LaunchPlan}
+     *
+     * @param version The minecraft version to launch
+     * @param appData The application data folder containing minecraft
+     * @throws IOException Failure to read the version manifest
+     */
+    private LaunchPlan(String version, File appData) throws IOException {
+        this.version = version;
+        this.minecraftDir = new File(appData.getAbsoluteFile(), ".minecraft");
+        this.gameDir = new File(new File(this.minecraftDir, "versions"), version);
+        this.natives = new File(this.gameDir, "natives");
+        List<File> read = new ArrayList<>();
+        VersionManifest man = ManifestLoader.load(this.minecraftDir, version, read);
+        if (man == null) {
+            read.add(ManifestLoader.manifestFile(this.minecraftDir, version));
+        }
+        this.inputs = Collections.unmodifiableList(read);
+        this.manifest = man == null ? VersionManifest.fromLibraries(version) : man;
+        File libraries = new File(this.minecraftDir, "libraries");
+        List<String> cp = new ArrayList<>(this.manifest.getLibraries().size() + 1);
+        for (VersionManifest.Artifact lib : this.manifest.getLibraries()) {
+            cp.add(new File(libraries, lib.getPath()).getPath());
+        }
+        String jar = this.manifest.getJar();
+        cp.add(new File(new File(new File(this.minecraftDir, "versions"), jar), jar + ".jar").getPath());
+        this.classpath = Collections.unmodifiableList(cp);
+        Map<String, String> vars = new HashMap<>();
+        vars.put("natives_directory", this.natives.getPath());
+        vars.put("classpath", String.join(File.pathSeparator, this.classpath));
+        vars.put("classpath_separator", File.pathSeparator);
+        vars.put("library_directory", libraries.getPath());
+        vars.put("version_name", this.manifest.getId());
+        vars.put("version_type", this.manifest.getType() == null ? "release" : this.manifest.getType());
+        vars.put("game_directory", this.minecraftDir.getPath());
+        vars.put("assets_root", new File(this.minecraftDir, "assets").getPath());
+        vars.put("game_assets", new File(this.minecraftDir, "assets").getPath());
+        vars.put("assets_index_name", this.manifest.getAssets() == null ? version : this.manifest.getAssets());
+        vars.put("user_properties", "{}");
+        vars.put("user_type", "mojang");
+        vars.put("launcher_name", "SimpleClient");
+        vars.put("launcher_version", "1.1.0");
+        List<String> args = new ArrayList<>();
+        args.add("java");
+        for (String arg : this.manifest.getJvmArguments()) {
+            args.add(LaunchPlan.substitute(arg, vars));
+        }
+        this.mainIndex = args.size();
+        args.add(this.manifest.getMainClass());
+        for (String arg : this.manifest.getGameArguments()) {
+            args.add(LaunchPlan.substitute(arg, vars));
+        }
+        this.argv = args.toArray(new String[args.size()]);
+        int[] slots = new int[this.argv.length];
+        int count = 0;
+        int flag = -1;
+        int cpArg = -1;
+        for (int i = 0; i < this.argv.length; i++) {
+            if (i > 0 && i < this.mainIndex && ("-cp".equals(this.argv[i - 1]) || "-classpath".equals(this.argv[i - 1]))) {
+                cpArg = i;
+            }
+            for (String key : USER_KEYS) {
+                if (this.argv[i].contains(key)) {
+                    slots[count++] = i;
+                    break;
+                }
+            }
+            if (i > 0 && "${auth_access_token}".equals(this.argv[i]) && "--accessToken".equals(this.argv[i - 1])) {
+                flag = i - 1;
+            }
+        }
+        this.userSlots = Arrays.copyOf(slots, count);
+        this.tokenFlag = flag;
+        this.classpathIndex = cpArg;
+    }
+
+    /**
+     * Restores a compiled {@link LaunchPlan}
+     *
+     * @param appData The application data folder containing minecraft
+     * @param in The input to read the plan from
+     * @param inputs The manifest files the plan was compiled from
+     * @throws IOException Failure to read the plan
+     */
+    private LaunchPlan(File appData, DataInput in, List<File> inputs) throws IOException {
+        this.version = in.readUTF();
+        this.minecraftDir = new File(appData.getAbsoluteFile(), ".minecraft");
+        this.gameDir = new File(new File(this.minecraftDir, "versions"), this.version);
+        this.natives = new File(this.gameDir, "natives");
+        this.manifest = VersionManifest.read(in);
+        this.classpath = Collections.unmodifiableList(VersionManifest.readStrings(in));
+        List<String> args = VersionManifest.readStrings(in);
+        this.argv = args.toArray(new String[args.size()]);
+        this.userSlots = new int[in.readInt()];
+        for (int i = 0; i < this.userSlots.length; i++) {
+            this.userSlots[i] = in.readInt();
+        }
+        this.tokenFlag = in.readInt();
+        this.mainIndex = in.readInt();
+        this.classpathIndex = in.readInt();
+        this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+    }
+
+    /**
+     * Copies a {@link LaunchPlan} onto another classpath
+     *
+     * @param base The plan to copy
+     * @param classpath The classpath entries to launch with instead
+     */
+    private LaunchPlan(LaunchPlan base, List<String> classpath) {
+        this.version = base.version;
+        this.manifest = base.manifest;
+        this.minecraftDir = base.minecraftDir;
+        this.gameDir = base.gameDir;
+        this.natives = base.natives;
+        this.classpath = Collections.unmodifiableList(new ArrayList<>(classpath));
+        this.argv = base.argv.clone();
+        this.argv[base.classpathIndex] = String.join(File.pathSeparator, this.classpath);
+        this.userSlots = base.userSlots;
+        this.tokenFlag = base.tokenFlag;
+        this.mainIndex = base.mainIndex;
+        this.classpathIndex = base.classpathIndex;
+        this.inputs = base.inputs;
+    }
+
+    /**
+     * Returns the compiled plan for a version and application data folder,
+     * compiling it on first use
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version to launch
+     * @param appData The application data folder containing minecraft
+     * @return The cached {@link LaunchPlan}
+     * @throws IOException Failure to read the version manifest
+     */
+    public static LaunchPlan of(String version, File appData) throws IOException {
+        String key = LaunchPlan.key(version, appData);
+        LaunchPlan back = CACHE.get(key);
+        if (back == null) {
+            PlanCache store = PlanCache.forDirectory(new File(appData.getAbsoluteFile(), ".minecraft"));
+            back = store.load(version, appData);
+            if (back == null) {
+                back = new LaunchPlan(version, appData);
+                store.store(back);
+            }
+            LaunchPlan old = CACHE.putIfAbsent(key, back);
+            back = old == null ? back : old;
+        }
+        return back;
+    }
+
+    /**
+     * Drops the cached plan for a version and application data folder from
+     * memory. On next use it is restored from the {@link PlanCache} if its
+     * manifests are unchanged, and recompiled otherwise; see
+     * {@link PlanCache#forget(String)} to force a recompile.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param appData The application data folder containing minecraft
+     */
+    public static void invalidate(String version, File appData) {
+        CACHE.remove(LaunchPlan.key(version, appData));
+    }
+
+    /**
+     * Drops every cached plan from memory
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public static void invalidateAll() {
+        CACHE.clear();
+    }
+
+    /**
+     * Builds the full command for launching a client as the supplied user
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name The in-game name to use
+     * @param user The {@link UUID} of the user
+     * @param accessToken The access token, or {@code null} for offline mode
+     * @return A new, modifiable argument list
+     */
+    public List<String> command(String name, UUID user, String accessToken) {
+        return this.command(name, user, accessToken, Collections.<String>emptyList());
+    }
+
+    /**
+     * Builds the full command for launching a client as the supplied user,
+     * with extra JVM arguments placed straight after the java executable
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name The in-game name to use
+     * @param user The {@link UUID} of the user
+     * @param accessToken The access token, or {@code null} for offline mode
+     * @param jvmArgs The JVM arguments to add
+     * @return A new, modifiable argument list
+     */
+    public List<String> command(String name, UUID user, String accessToken, List<String> jvmArgs) {
+        String[] args = this.fill(name, user, accessToken);
+        List<String> back = new ArrayList<>(args.length + jvmArgs.size());
+        back.add(args[0]);
+        back.addAll(jvmArgs);
+        this.copy(args, 1, accessToken == null, back);
+        return back;
+    }
+
+    /**
+     * Returns whether the per-user arguments all follow the main class, so
+     * that a JVM can be started before the user is known
+     *
+     * @return {@code true} if the plan can be launched through a
+     *         {@link WarmStart}
+     */
+    boolean isWarmable() {
+        return this.userSlots.length == 0 || this.userSlots[0] > this.mainIndex;
+    }
+
+    /**
+     * Builds the command for a JVM that loads the main class through a
+     * {@link WarmStart} and then waits for its game arguments
+     *
+     * @param jvmArgs The JVM arguments to add
+     * @param bootstrap The classpath entry holding {@link WarmStart}
+     * @return A new, modifiable argument list
+     */
+    List<String> warmCommand(List<String> jvmArgs, String bootstrap) {
+        List<String> back = new ArrayList<>(this.mainIndex + jvmArgs.size() + 4);
+        back.add(this.argv[0]);
+        back.addAll(jvmArgs);
+        for (int i = 1; i < this.mainIndex; i++) {
+            back.add(i == this.classpathIndex ? this.argv[i] + File.pathSeparator + bootstrap : this.argv[i]);
+        }
+        if (this.classpathIndex < 0) {
+            back.add("-cp");
+            back.add(String.join(File.pathSeparator, this.classpath) + File.pathSeparator + bootstrap);
+        }
+        back.add(WarmStart.class.getName());
+        back.add(this.argv[this.mainIndex]);
+        return back;
+    }
+
+    /**
+     * Builds the arguments passed to the main class for the supplied user
+     *
+     * @param name The in-game name to use
+     * @param user The {@link UUID} of the user
+     * @param accessToken The access token, or {@code null} for offline mode
+     * @return A new, modifiable argument list
+     */
+    List<String> gameArguments(String name, UUID user, String accessToken) {
+        String[] args = this.fill(name, user, accessToken);
+        List<String> back = new ArrayList<>(args.length - this.mainIndex);
+        this.copy(args, this.mainIndex + 1, accessToken == null, back);
+        return back;
+    }
+
+    /**
+     * Returns a copy of the command with the per-user placeholders filled in
+     */
+    private String[] fill(String name, UUID user, String accessToken) {
+        String uuid = user.toString();
+        String token = accessToken == null ? "0" : accessToken;
+        String[] args = this.argv.clone();
+        for (int slot : this.userSlots) {
+            args[slot] = args[slot].replace(USER_KEYS[0], name).replace(USER_KEYS[1], uuid)
+                    .replace(USER_KEYS[2], token).replace(USER_KEYS[3], "token:" + token + ":" + uuid);
+        }
+        return args;
+    }
+
+    /**
+     * Copies arguments from an index on, dropping the access token flag when
+     * launching offline
+     */
+    private void copy(String[] args, int from, boolean offline, List<String> into) {
+        for (int i = from; i < args.length; i++) {
+            if (offline && i == this.tokenFlag) {
+                i++;
+                continue;
+            }
+            into.add(args[i]);
+        }
+    }
+
+    /**
+     * Returns the minecraft version this plan launches
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The minecraft version
+     */
+    public String getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the resolved manifest of the version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The {@link VersionManifest}
+     */
+    public VersionManifest getManifest() {
+        return this.manifest;
+    }
+
+    /**
+     * Returns the minecraft directory
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The .minecraft folder
+     */
+    public File getMinecraftDir() {
+        return this.minecraftDir;
+    }
+
+    /**
+     * Returns the directory of the version being launched
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The game version folder
+     */
+    public File getGameDir() {
+        return this.gameDir;
+    }
+
+    /**
+     * Returns the natives folder for the version being launched
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The natives folder
+     */
+    public File getNatives() {
+        return this.natives;
+    }
+
+    /**
+     * Returns the classpath entries, in order
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of classpath entries
+     */
+    public List<String> getClasspath() {
+        return this.classpath;
+    }
+
+    /**
+     * Returns a copy of this plan that launches with another classpath. The
+     * copy is not cached.
+     *
+     * @param classpath The classpath entries to launch with
+     * @return The new {@link LaunchPlan}, or {@code null} if the command
+     *         does not pass the classpath as an argument
+     */
+    LaunchPlan withClasspath(List<String> classpath) {
+        return this.classpathIndex < 0 ? null : new LaunchPlan(this, classpath);
+    }
+
+    /**
+     * Returns the manifest files the plan was compiled from. When the
+     * version has no manifest, this is the manifest file that would be read.
+     *
+     * @return An unmodifiable list of manifest files
+     */
+    List<File> getInputs() {
+        return this.inputs;
+    }
+
+    /**
+     * Writes the compiled plan, without its inputs, for
+     * {@link #read(File, DataInput, List)}
+     *
+     * @param out The output to write to
+     * @throws IOException Failure to write
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(this.version);
+        this.manifest.write(out);
+        VersionManifest.writeStrings(out, this.classpath);
+        VersionManifest.writeStrings(out, Arrays.asList(this.argv));
+        out.writeInt(this.userSlots.length);
+        for (int slot : this.userSlots) {
+            out.writeInt(slot);
+        }
+        out.writeInt(this.tokenFlag);
+        out.writeInt(this.mainIndex);
+        out.writeInt(this.classpathIndex);
+    }
+
+    /**
+     * Reads a plan written by {@link #write(DataOutput)}
+     *
+     * @param appData The application data folder containing minecraft
+     * @param in The input to read from
+     * @param inputs The manifest files the plan was compiled from
+     * @return The restored {@link LaunchPlan}
+     * @throws IOException Failure to read
+     */
+    static LaunchPlan read(File appData, DataInput in, List<File> inputs) throws IOException {
+        return new LaunchPlan(appData, in, inputs);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", this.command("%USERNAME%", new UUID(0, 0), null));
+    }
+
+    /**
+     * Replaces every known {@code ${name}} placeholder in an argument.
+     * Unknown placeholders, including the per-user ones, are left intact.
+     *
+     * @param arg The argument template
+     * @param vars The placeholder values
+     * @return The substituted argument
+     */
+    private static String substitute(String arg, Map<String, String> vars) {
+        int start = arg.indexOf("${");
+        if (start < 0) {
+            return arg;
+        }
+        StringBuilder sb = new StringBuilder(arg.length() + 32);
+        int last = 0;
+        while (start >= 0) {
+            int end = arg.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            String value = vars.get(arg.substring(start + 2, end));
+            sb.append(arg, last, start).append(value == null ? arg.substring(start, end + 1) : value);
+            last = end + 1;
+            start = arg.indexOf("${", last);
+        }
+        return sb.append(arg, last, arg.length()).toString();
+    }
+
+    private static String key(String version, File appData) {
+        return version + File.pathSeparatorChar + appData.getAbsolutePath();
+    }
+
+}
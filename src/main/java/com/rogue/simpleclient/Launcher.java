@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Spawns and supervises client processes asynchronously. Launches are queued
+ * and started on a single scheduler thread, which also polls running
+ * processes for their exit, so no thread is parked per client.
+ * <br /><br />
+ * The number of concurrently running clients can be capped, and successive
+ * starts can be staggered so that many clients do not cold-start their JVMs
+ * at the same moment.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class Launcher {
+
+    /** The shared default launcher, created on first use */
+    private static volatile Launcher def;
+    /** The maximum number of running clients */
+    private final int maxRunning;
+    /** Minimum delay between two process starts, in nanoseconds */
+    private final long staggerNanos;
+    /** How often running processes are polled for exit, in milliseconds */
+    private final long pollMillis;
+    /** The scheduler thread that starts and reaps processes */
+    private final ScheduledExecutorService scheduler;
+    /** Runs user callbacks off of the scheduler thread */
+    private final ExecutorService callbacks;
+    /** Launches waiting for a free slot, guarded by {@code this} */
+    private final Queue<LaunchHandle> queued = new ArrayDeque<>();
+    /** Launches currently running, guarded by {@code this} */
+    private final List<LaunchHandle> running = new ArrayList<>();
+    /** The earliest time at which the next process may be started */
+    private long nextStart = System.nanoTime();
+    /** Whether a tick is already pending, guarded by {@code this} */
+    private boolean tickPending;
+    /** Whether launches are no longer accepted, guarded by {@code this} */
+    private boolean shutdown;
+    /** Launches taken off the queue but not yet running, guarded by {@code this} */
+    private int spawning;
+
+    /**
+     * Constructs a new {@link Launcher}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxRunning The maximum number of concurrently running clients
+     * @param staggerMillis The minimum delay between two process starts
+     */
+    public Launcher(int maxRunning, long staggerMillis) {
+        this(maxRunning, staggerMillis, 100);
+    }
+
+    /**
+     * Constructs a new {@link Launcher}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxRunning The maximum number of concurrently running clients
+     * @param staggerMillis The minimum delay between two process starts
+     * @param pollMillis How often running processes are checked for exit
+     */
+    public Launcher(int maxRunning, long staggerMillis, long pollMillis) {
+        if (maxRunning < 1) {
+            throw new IllegalArgumentException("maxRunning must be positive");
+        }
+        this.maxRunning = maxRunning;
+        this.staggerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, staggerMillis));
+        this.pollMillis = Math.max(1, pollMillis);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(Launcher.daemon("SimpleClient-launcher"));
+        this.callbacks = Executors.newCachedThreadPool(Launcher.daemon("SimpleClient-callback"));
+        this.scheduler.scheduleWithFixedDelay(this::tick, this.pollMillis, this.pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the shared launcher used by {@link SimpleClient} when none is
+     * supplied. It does not cap or stagger launches.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The default {@link Launcher}
+     */
+    public static Launcher getDefault() {
+        Launcher back = Launcher.def;
+        if (back == null) {
+            synchronized (Launcher.class) {
+                back = Launcher.def;
+                if (back == null) {
+                    Launcher.def = back = new Launcher(Integer.MAX_VALUE, 0);
+                }
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Queues a process for launching
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name A name identifying the client instance
+     * @param builder The {@link ProcessBuilder} to start the process with
+     * @return A handle for the queued launch
+     */
+    public LaunchHandle launch(String name, ProcessBuilder builder) {
+        return this.launch(name, builder, null);
+    }
+
+    /**
+     * Queues a process for launching. The spawn hook is run on the launcher
+     * thread as soon as the process has started, before any other callbacks,
+     * and so must not block.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name A name identifying the client instance
+     * @param builder The {@link ProcessBuilder} to start the process with
+     * @param spawnHook Run right after the process starts, may be {@code null}
+     * @return A handle for the queued launch
+     */
+    public LaunchHandle launch(String name, ProcessBuilder builder, Consumer<LaunchHandle> spawnHook) {
+        return this.launch(name, builder::start, spawnHook);
+    }
+
+    /**
+     * Queues a process for launching, obtaining the process from a
+     * {@link Spawner} rather than a {@link ProcessBuilder}
+     *
+     * @param name A name identifying the client instance
+     * @param spawner Starts or hands over the process
+     * @param spawnHook Run right after the process starts, may be {@code null}
+     * @return A handle for the queued launch
+     */
+    LaunchHandle launch(String name, Spawner spawner, Consumer<LaunchHandle> spawnHook) {
+        LaunchHandle handle = new LaunchHandle(this, name, spawner, spawnHook);
+        synchronized (this) {
+            if (this.shutdown) {
+                throw new IllegalStateException("Launcher has been shut down");
+            }
+            this.queued.add(handle);
+        }
+        this.requestTick(0);
+        return handle;
+    }
+
+    /**
+     * Returns the number of clients currently running
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The running client count
+     */
+    public synchronized int getRunning() {
+        return this.running.size();
+    }
+
+    /**
+     * Returns the number of launches waiting to be started
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The queued launch count
+     */
+    public synchronized int getQueued() {
+        return this.queued.size();
+    }
+
+    /**
+     * Returns the maximum number of concurrently running clients
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The concurrency cap
+     */
+    public int getMaxRunning() {
+        return this.maxRunning;
+    }
+
+    /**
+     * Stops accepting launches and cancels any that are still queued. Running
+     * clients are left alone and still reaped, so their handles complete and
+     * exit callbacks fire; the launcher threads stop once the last one exits.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public void shutdown() {
+        List<LaunchHandle> pending;
+        synchronized (this) {
+            this.shutdown = true;
+            pending = new ArrayList<>(this.queued);
+            this.queued.clear();
+        }
+        pending.forEach(h -> h.cancel(false));
+        this.stopIfIdle();
+    }
+
+    /**
+     * Stops the launcher threads once the launcher is shut down and nothing
+     * is left to start or reap
+     */
+    private void stopIfIdle() {
+        synchronized (this) {
+            if (!this.shutdown || this.spawning > 0 || !this.running.isEmpty() || !this.queued.isEmpty()) {
+                return;
+            }
+        }
+        this.scheduler.shutdown();
+        this.callbacks.shutdown();
+    }
+
+    /**
+     * Removes a queued launch, if it has not been started yet
+     *
+     * @param handle The launch to remove
+     * @return {@code true} if the launch was still queued
+     */
+    synchronized boolean dequeue(LaunchHandle handle) {
+        return this.queued.remove(handle);
+    }
+
+    /**
+     * Returns the executor that user callbacks are run on
+     *
+     * @return The callback executor
+     */
+    ExecutorService getCallbackExecutor() {
+        return this.callbacks;
+    }
+
+    /**
+     * Schedules a tick, unless one is already pending
+     *
+     * @param delayNanos How long to wait before ticking
+     */
+    private void requestTick(long delayNanos) {
+        synchronized (this) {
+            if (this.tickPending || this.scheduler.isShutdown()) {
+                return;
+            }
+            this.tickPending = true;
+        }
+        this.scheduler.schedule(this::tick, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs a tick, keeping any unexpected failure from cancelling the
+     * periodic reaping
+     */
+    private void tick() {
+        try {
+            this.reap();
+        } catch (RuntimeException ex) {
+            ex.printStackTrace();
+        }
+        this.stopIfIdle();
+    }
+
+    /**
+     * Reaps exited processes, then starts as many queued launches as the
+     * concurrency cap and stagger delay allow
+     */
+    private void reap() {
+        List<LaunchHandle> exited = new ArrayList<>();
+        List<LaunchHandle> starting = new ArrayList<>();
+        long wait = -1;
+        synchronized (this) {
+            this.tickPending = false;
+            for (Iterator<LaunchHandle> itr = this.running.iterator(); itr.hasNext();) {
+                LaunchHandle h = itr.next();
+                if (!h.getProcess().isAlive()) {
+                    itr.remove();
+                    exited.add(h);
+                }
+            }
+            long now = System.nanoTime();
+            while (!this.queued.isEmpty() && this.running.size() + starting.size() < this.maxRunning) {
+                if (now - this.nextStart < 0) {
+                    wait = this.nextStart - now;
+                    break;
+                }
+                starting.add(this.queued.poll());
+                this.spawning++;
+                this.nextStart = now + this.staggerNanos;
+                if (this.staggerNanos > 0) {
+                    now = System.nanoTime();
+                }
+            }
+        }
+        for (LaunchHandle h : exited) {
+            try {
+                h.exited(h.getProcess().exitValue());
+            } catch (RuntimeException ex) {
+                h.failed(ex);
+            }
+        }
+        for (LaunchHandle h : starting) {
+            Process p = null;
+            try {
+                p = h.start();
+            } catch (IOException | RuntimeException ex) {
+                h.failed(ex);
+            } finally {
+                synchronized (this) {
+                    this.spawning--;
+                    if (p != null) {
+                        this.running.add(h);
+                    }
+                }
+            }
+        }
+        if (wait >= 0) {
+            this.requestTick(wait);
+        }
+    }
+
+    /**
+     * Supplies the process for a launch, on the launcher thread
+     */
+    @FunctionalInterface
+    static interface Spawner {
+
+        /**
+         * Starts the process, or takes over one that is already running
+         *
+         * @return The client process
+         * @throws IOException Failure to start the process
+         */
+        Process start() throws IOException;
+
+    }
+
+    /**
+     * Returns a factory for numbered daemon threads
+     *
+     * @param name The prefix for thread names
+     * @return A daemon {@link ThreadFactory}
+     */
+    static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The libraries needed on the classpath of each supported Minecraft version
+ *
+ * @since 1.0.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+enum Library {
+    APACHE_COMMONS_3("org\\apache\\commons\\commons-lang3\\%s\\commons-lang3-%s", map("1.7.9", "3.1"), map("1.8.3", "3.3.2")),
+    APACHE_COMMONS_COMPRESS("org\\apache\\commons\\commons-compress\\%s\\commons-compress-%s", map("1.8.3", "1.8.1")),
+    ARGO("argo\\argo\\%s\\argo-%s", map("1.7.9", "2.25_fixed")),
+    AUTHLIB("com\\mojang\\authlib\\%s\\authlib-%s", map("1.7.9", "1.5.13"), map("1.8.3", "1.5.17")),
+    CODEC_JORBIS("com\\paulscode\\codecjorbis\\%s\\codecjorbis-%s", map("1.7.9", "20101023"), map("1.8.3", "20101023")),
+    CODEC_WAV("com\\paulscode\\codecwav\\%s\\codecwav-%s", map("1.7.9", "20101023"), map("1.8.3", "20101023")),
+    CODEC_COMMONS("commons-codec\\commons-codec\\%s\\commons-codec-%s", map("1.7.9", "1.9"), map("1.8.3", "1.9")),
+    GSON("com\\google\\code\\gson\\gson\\%s\\gson-%s", map("1.7.9", "2.2.4"), map("1.8.3", "2.2.4")),
+    GUAVA("com\\google\\guava\\guava\\%s\\guava-%s", map("1.7.9", "15.0"), map("1.8.3", "17.0")),
+    HTTP_CORE("org\\apache\\httpcomponents\\httpcore\\%s\\httpcore-%s", map("1.8.3", "4.3.2")),
+    HTTP_CLIENT("org\\apache\\httpcomponents\\httpclient\\%s\\httpclient-%s", map("1.8.3", "4.3.3")),
+    ICU4J("com\\ibm\\icu\\icu4j-core-mojang\\%s\\icu4j-core-mojang-51.2", map("1.7.9", "51.2"), map("1.8.3", "51.2")),
+    IO_COMMONS("commons-io\\commons-io\\%s\\commons-io-%s", map("1.7.9", "2.4"), map("1.8.3", "2.4")),
+    JINPUT("net\\java\\jinput\\jinput\\%s\\jinput-%s", map("1.7.9", "2.0.5"), map("1.8.3", "2.0.5")),
+    JINPUT_PLATFORM("net\\java\\jinput\\jinput-platform\\%s\\jinput-platform-%s-natives-windows", map("1.7.9", "2.0.5"), map("1.8.3", "2.0.5")),
+    JNA("net\\java\\dev\\jna\\jna\\%s\\jna-%s", map("1.8.3", "3.4.0")),
+    JNA_PLATFORM("net\\java\\dev\\jna\\platform\\%s\\platform-%s", map("1.8.3", "3.4.0")),
+    JOPT_SIMPLE("net\\sf\\jopt-simple\\jopt-simple\\%s\\jopt-simple-%s", map("1.7.9", "4.5"), map("1.8.3", "4.6")),
+    JUTILS("net\\java\\jutils\\jutils\\%s\\jutils-%s", map("1.7.9", "1.0.0"), map("1.8.3", "1.0.0")),
+    LIBRARY_JAVASOUND("com\\paulscode\\libraryjavasound\\%s\\libraryjavasound-%s", map("1.7.9", "20101123"), map("1.8.3", "20101123")),
+    LIBRARY_LWJGL_OPENAL("com\\paulscode\\librarylwjglopenal\\%s\\librarylwjglopenal-%s", map("1.7.9", "20100824"), map("1.8.3", "20100824")),
+    LOG4J_API("org\\apache\\logging\\log4j\\log4j-api\\%s\\log4j-api-%s", map("1.7.9", "2.0-beta9"), map("1.8.3", "2.0-beta9")),
+    LOG4J_CORE("org\\apache\\logging\\log4j\\log4j-core\\%s\\log4j-core-%s", map("1.7.9", "2.0-beta9"), map("1.8.3", "2.0-beta9")),
+    LOGGING_COMMONS("commons-logging\\commons-logging\\%s\\commons-logging-%s", map("1.8.3", "1.1.3")),
+    LWJGL("org\\lwjgl\\lwjgl\\lwjgl\\%s\\lwjgl-%s", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
+    LWJGL_UTIL("org\\lwjgl\\lwjgl\\lwjgl_util\\%s\\lwjgl_util-%s", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
+    LWJGL_PLATFORM("org\\lwjgl\\lwjgl\\lwjgl-platform\\%s\\lwjgl-platform-%s-natives-windows", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
+    NETTY_ALL("io\\netty\\netty-all\\%s\\netty-all-%s", map("1.7.9", "4.0.10.Final"), map("1.8.3", "4.0.23.Final")),
+    OSHI("oshi-project\\oshi-core\\%s\\oshi-core-%s", map("1.8.3", "1.1")),
+    REALMS("com\\mojang\\realms\\%s\\realms-%s", map("1.8.3", "1.7.13")),
+    SOUND_SYSTEM("com\\paulscode\\soundsystem\\%s\\soundsystem-%s", map("1.7.9", "20120107"), map("1.8.3", "20120107")),
+    TROVE4J("net\\sf\\trove4j\\trove4j\\%s\\trove4j-%s", map("1.7.9", "3.0.3")),
+    TWITCH("tv\\twitch\\twitch\\%s\\twitch-%s", map("1.7.9", "5.16"), map("1.8.3", "6.5")),
+    TWITCH_PLATFORM("tv\\twitch\\twitch-platform\\%s\\twitch-%s-natives-windows-" + arch(), map("1.7.9", "5.16"), map("1.8.3", "6.5")),
+    TWITCH_EXTERNAL_PLATFORM("tv\\twitch\\twitch-external-platform\\%s\\twitch-%s-natives-windows-" + arch(), map("1.7.9", "5.16"), map("1.8.3", "6.5")),
+    VECTOR_MATH("java3d\\vecmath\\%s\\vecmath-%s", map("1.7.9", "1.3.1")),
+    ;
+
+    /** Resolved library paths per version, relative to the libraries folder */
+    private static final ConcurrentMap<String, List<String>> MAPPED = new ConcurrentHashMap<>();
+    private final String format;
+    private final Map<String, String> vers;
+
+    @SafeVarargs
+    private Library(String format, Mapping<String, String>... vers) {
+        this.format = format.replace("\\", File.separator) + ".jar";
+        this.vers = new HashMap<>(vers.length);
+        for (Mapping<String, String> val : vers) {
+            this.vers.put(val.getKey(), val.getValue());
+        }
+    }
+
+    public Map<String, String> getLibraryVersionMappings() {
+        return Collections.unmodifiableMap(this.vers);
+    }
+
+    /**
+     * Returns the paths of every library used by a version, relative to the
+     * libraries folder. Paths are resolved once per version and cached.
+     *
+     * @since 1.0.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @return An unmodifiable list of relative library paths
+     */
+    public static List<String> getMappedVersions(String version) {
+        List<String> back = MAPPED.get(version);
+        if (back == null) {
+            List<String> libs = new ArrayList<>();
+            for (Library lib : Library.values()) {
+                String repl = lib.vers.get(version);
+                if (repl != null) {
+                    libs.add(String.format(lib.format, repl, repl));
+                }
+            }
+            back = Collections.unmodifiableList(libs);
+            List<String> old = MAPPED.putIfAbsent(version, back);
+            back = old == null ? back : old;
+        }
+        return back;
+    }
+
+    /**
+     * Returns the absolute paths of every library used by a version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param minecraftDir The minecraft directory holding the libraries
+     * @return The absolute library paths
+     */
+    public static List<String> getClasspath(String version, File minecraftDir) {
+        File libraries = new File(minecraftDir.getAbsoluteFile(), "libraries");
+        List<String> mapped = Library.getMappedVersions(version);
+        List<String> back = new ArrayList<>(mapped.size());
+        for (String lib : mapped) {
+            back.add(new File(libraries, lib).getPath());
+        }
+        return back;
+    }
+
+    /**
+     * Returns the classpath string for every library used by a version
+     *
+     * @since 1.0.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @param minecraftDir The minecraft directory holding the libraries
+     * @return The libraries, separated by {@link File#pathSeparator}
+     */
+    public static String getLibraryString(String version, File minecraftDir) {
+        return String.join(File.pathSeparator, Library.getClasspath(version, minecraftDir));
+    }
+
+    private static Mapping<String, String> map(String key, String val) {
+        return new Mapping<>(key, val);
+    }
+
+    private static String arch() {
+        boolean mojangUsesJVMArch = true;
+        if (mojangUsesJVMArch) {
+            return System.getProperty("os.arch").endsWith("64") ? "64" : "32";
+        } else {
+            String arch = System.getenv("PROCESSOR_ARCHITECTURE");
+            String wow64Arch = System.getenv("PROCESSOR_ARCHITEW6432");
+            return arch.endsWith("64")
+                    || wow64Arch != null && wow64Arch.endsWith("64")
+                    ? "64" : "32";
+        }
+    }
+
+    private static class Mapping<K, V> implements Map.Entry<K, V> {
+        
+        private final K key;
+        private V value;
+
+        public Mapping(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K getKey() {
+            return this.key;
+        }
+
+        @Override
+        public V getValue() {
+            return this.value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V old = this.value;
+            this.value = value;
+            return old;
+        }
+    }
+
+}
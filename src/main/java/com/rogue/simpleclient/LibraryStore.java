@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A content-addressed store of library jars shared by several minecraft
+ * directories. Each jar is kept once, as {@code objects/<xx>/<sha1>}, and
+ * the jars in every linked {@code .minecraft} are replaced by hard links to
+ * it, so that all clients map the same file and share its pages in memory.
+ * Where a hard link is impossible, such as across filesystems, a symbolic
+ * link is used instead and recorded under {@code refs/}.
+ * <br /><br />
+ * Stored jars are made read-only, since a change through any link would
+ * show up in every directory; SimpleClient only ever replaces files, never
+ * rewrites them. Any number of launchers, in one or several processes, may
+ * fill the store at once; {@link #collect()} takes an exclusive lock on the
+ * store and deletes the jars no directory links to anymore.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LibraryStore {
+
+    /** Open stores, so that locks are shared within the process */
+    private static final ConcurrentMap<String, LibraryStore> OPEN = new ConcurrentHashMap<>();
+    /** How old an abandoned temporary file must be before it is cleaned up */
+    private static final long STALE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    /** The root folder of the store */
+    private final Path root;
+    /** Orders linking and collecting within the process */
+    private final ReentrantReadWriteLock local = new ReentrantReadWriteLock();
+    /** The number of threads linking in this process, guarded by {@code this} */
+    private int linking;
+    /** The shared lock held while any thread is linking, guarded by {@code this} */
+    private FileLock shared;
+
+    private LibraryStore(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the store kept in a folder, which is created as needed
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param root The store's root folder
+     * @return The {@link LibraryStore} for the folder
+     */
+    public static LibraryStore at(File root) {
+        return OPEN.computeIfAbsent(root.getAbsolutePath(), k -> new LibraryStore(root.getAbsoluteFile().toPath()));
+    }
+
+    /**
+     * Moves the classpath and natives jars of a plan into the store, leaving
+     * links in their place. Jars that are already linked cost a couple of
+     * {@code stat} calls.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} whose jars to link
+     * @return The number of jars that were newly linked
+     * @throws IOException Failure to read a jar or to write to the store
+     */
+    public int link(LaunchPlan plan) throws IOException {
+        List<File> jars = new ArrayList<>();
+        for (String entry : plan.getClasspath()) {
+            jars.add(new File(entry));
+        }
+        File libraries = new File(plan.getMinecraftDir(), "libraries");
+        for (VersionManifest.Artifact art : plan.getManifest().getNatives()) {
+            jars.add(new File(libraries, art.getPath()));
+        }
+        FileHashIndex index = FileHashIndex.of(new File(new File(plan.getMinecraftDir(), "simpleclient"), "libraries.idx"));
+        int back = 0;
+        this.lockShared();
+        try {
+            for (File jar : jars) {
+                if (jar.isFile() && this.link(jar.toPath(), index)) {
+                    back++;
+                }
+            }
+        } finally {
+            this.unlockShared();
+        }
+        if (back > 0) {
+            index.save();
+        }
+        return back;
+    }
+
+    /**
+     * Deletes every stored jar that no directory links to anymore, along with
+     * stale references and abandoned temporary files. Linking waits while
+     * this runs.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The number of jars deleted
+     * @throws IOException Failure to read or lock the store
+     */
+    @SuppressWarnings("try")
+    public int collect() throws IOException {
+        Path objects = this.root.resolve("objects");
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+        int back = 0;
+        this.local.writeLock().lock();
+        try (FileChannel ch = this.lockChannel(); FileLock lock = ch.lock()) {
+            try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(objects)) {
+                for (Path prefix : prefixes) {
+                    boolean empty = true;
+                    try (DirectoryStream<Path> blobs = Files.newDirectoryStream(prefix)) {
+                        for (Path blob : blobs) {
+                            if (this.isReferenced(blob)) {
+                                empty = false;
+                            } else {
+                                Files.deleteIfExists(blob);
+                                back++;
+                            }
+                        }
+                    }
+                    if (empty) {
+                        Files.deleteIfExists(prefix);
+                    }
+                }
+            }
+            Path tmp = this.root.resolve("tmp");
+            if (Files.isDirectory(tmp)) {
+                long cutoff = System.currentTimeMillis() - STALE_MILLIS;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(tmp)) {
+                    for (Path f : files) {
+                        if (Files.getLastModifiedTime(f).toMillis() < cutoff) {
+                            Files.deleteIfExists(f);
+                        }
+                    }
+                }
+            }
+        } finally {
+            this.local.writeLock().unlock();
+        }
+        return back;
+    }
+
+    /**
+     * Links a single jar into the store
+     *
+     * @param jar The jar in a minecraft directory
+     * @param index The hash index of that directory
+     * @return {@code true} if the jar was newly linked
+     * @throws IOException Failure to read the jar or to write to the store
+     */
+    private boolean link(Path jar, FileHashIndex index) throws IOException {
+        String sha1 = index.hash(jar.toFile());
+        Path blob = this.root.resolve("objects").resolve(sha1.substring(0, 2)).resolve(sha1);
+        if (Files.isSymbolicLink(jar) ? blob.equals(Files.readSymbolicLink(jar)) : Files.exists(blob) && Files.isSameFile(jar, blob)) {
+            return false;
+        }
+        this.store(jar, blob);
+        Path tmp = jar.resolveSibling("." + jar.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+        try {
+            try {
+                Files.createLink(tmp, blob);
+            } catch (IOException | UnsupportedOperationException ex) {
+                // most likely another filesystem, so refer to the blob instead
+                this.reference(jar, sha1);
+                Files.createSymbolicLink(tmp, blob);
+            }
+            LibraryStore.replace(tmp, jar);
+        } catch (IOException | UnsupportedOperationException ex) {
+            System.err.println("Could not link " + jar + " into the library store: " + ex.getMessage());
+            return false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        File f = jar.toFile();
+        index.record(f, f.length(), f.lastModified(), sha1);
+        return true;
+    }
+
+    /**
+     * Adds a jar's content to the store, unless it is already there. The
+     * blob is created with a single link, so concurrent launchers agree on
+     * one copy.
+     *
+     * @param jar The jar to store
+     * @param blob Where the jar's content belongs
+     * @throws IOException Failure to write to the store
+     */
+    private void store(Path jar, Path blob) throws IOException {
+        if (Files.exists(blob)) {
+            return;
+        }
+        Files.createDirectories(blob.getParent());
+        Path tmpDir = Files.createDirectories(this.root.resolve("tmp"));
+        Path tmp = tmpDir.resolve(blob.getFileName() + "." + Long.toHexString(System.nanoTime()));
+        try {
+            try {
+                Files.createLink(tmp, jar);
+            } catch (IOException | UnsupportedOperationException ex) {
+                Files.copy(jar, tmp, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            tmp.toFile().setWritable(false, false);
+            try {
+                Files.createLink(blob, tmp);
+            } catch (FileAlreadyExistsException ex) {
+                // another launcher stored it first
+            } catch (IOException | UnsupportedOperationException ex) {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Records a symbolic link to a blob, so that collection keeps it
+     *
+     * @param link The symbolic link
+     * @param sha1 The hash of the blob
+     * @throws IOException Failure to write the reference
+     */
+    private void reference(Path link, String sha1) throws IOException {
+        Path dir = Files.createDirectories(this.root.resolve("refs").resolve(sha1));
+        String target = link.toAbsolutePath().toString();
+        byte[] bytes = target.getBytes(StandardCharsets.UTF_8);
+        String name;
+        try {
+            name = Hashing.hex(MessageDigest.getInstance("SHA-1").digest(bytes));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("SHA-1 is not available", ex);
+        }
+        Files.write(dir.resolve(name), bytes);
+    }
+
+    /**
+     * Returns whether anything still links to a blob, deleting references
+     * that no longer point at it
+     *
+     * @param blob The blob
+     * @return {@code true} if the blob is in use
+     * @throws IOException Failure to read the store
+     */
+    private boolean isReferenced(Path blob) throws IOException {
+        try {
+            if (((Number) Files.getAttribute(blob, "unix:nlink")).intValue() > 1) {
+                return true;
+            }
+        } catch (UnsupportedOperationException | IllegalArgumentException ex) {
+            // hard links cannot be counted here, so never collect
+            return true;
+        } catch (NoSuchFileException ex) {
+            return true;
+        }
+        Path refs = this.root.resolve("refs").resolve(blob.getFileName().toString());
+        if (!Files.isDirectory(refs)) {
+            return false;
+        }
+        boolean live = false;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(refs)) {
+            for (Path ref : files) {
+                Path link = new File(new String(Files.readAllBytes(ref), StandardCharsets.UTF_8)).toPath();
+                if (Files.isSymbolicLink(link) && blob.equals(Files.readSymbolicLink(link))) {
+                    live = true;
+                } else {
+                    Files.deleteIfExists(ref);
+                }
+            }
+        }
+        if (!live) {
+            Files.deleteIfExists(refs);
+        }
+        return live;
+    }
+
+    /**
+     * Takes the shared store lock for this process, if no other thread holds
+     * it already
+     */
+    private void lockShared() throws IOException {
+        this.local.readLock().lock();
+        try {
+            synchronized (this) {
+                if (this.linking == 0) {
+                    FileChannel ch = this.lockChannel();
+                    try {
+                        this.shared = ch.lock(0, Long.MAX_VALUE, true);
+                    } catch (IOException | RuntimeException ex) {
+                        ch.close();
+                        throw ex;
+                    }
+                }
+                this.linking++;
+            }
+        } catch (IOException | RuntimeException ex) {
+            this.local.readLock().unlock();
+            throw ex;
+        }
+    }
+
+    private void unlockShared() throws IOException {
+        try {
+            synchronized (this) {
+                if (--this.linking == 0) {
+                    this.shared.channel().close();
+                    this.shared = null;
+                }
+            }
+        } finally {
+            this.local.readLock().unlock();
+        }
+    }
+
+    private FileChannel lockChannel() throws IOException {
+        Files.createDirectories(this.root);
+        return FileChannel.open(this.root.resolve("store.lock"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Moves a file over another, atomically where possible
+     */
+    private static void replace(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
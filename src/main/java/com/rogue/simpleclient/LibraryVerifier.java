@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that every classpath entry of a {@link LaunchPlan} exists and, where
+ * the manifest declares one, matches its size and SHA-1. Files are hashed in
+ * parallel on a fork-join pool, and hashes are kept in a {@link FileHashIndex}
+ * so that unchanged jars are only hashed once.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LibraryVerifier {
+
+    /** The pool used for hashing, shared by all verifiers */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    /** The index of previously computed hashes */
+    private final FileHashIndex index;
+
+    /**
+     * Constructs a new {@link LibraryVerifier}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param index The index to record computed hashes in
+     */
+    public LibraryVerifier(FileHashIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Returns a verifier whose index is kept in the supplied minecraft
+     * directory
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @return A {@link LibraryVerifier} for the directory
+     */
+    public static LibraryVerifier forDirectory(File minecraftDir) {
+        return new LibraryVerifier(FileHashIndex.of(new File(new File(minecraftDir, "simpleclient"), "libraries.idx")));
+    }
+
+    /**
+     * Verifies the classpath of a plan
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} to verify
+     * @throws VerificationException If any entry is missing or corrupt
+     * @throws IOException Failure to save the hash index
+     */
+    public void verify(LaunchPlan plan) throws IOException {
+        List<String> classpath = plan.getClasspath();
+        List<VersionManifest.Artifact> libs = plan.getManifest().getLibraries();
+        List<Callable<String>> checks = new ArrayList<>(classpath.size());
+        for (int i = 0; i < classpath.size(); i++) {
+            File file = new File(classpath.get(i));
+            VersionManifest.Artifact art = i < libs.size() ? libs.get(i) : null;
+            checks.add(() -> this.check(file, art));
+        }
+        List<String> problems = new ArrayList<>();
+        for (Future<String> f : POOL.invokeAll(checks)) {
+            try {
+                String problem = f.get();
+                if (problem != null) {
+                    problems.add(problem);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while verifying libraries", ex);
+            } catch (ExecutionException ex) {
+                problems.add(ex.getCause().toString());
+            }
+        }
+        this.index.save();
+        if (!problems.isEmpty()) {
+            throw new VerificationException(problems);
+        }
+    }
+
+    /**
+     * Checks a single classpath entry
+     *
+     * @param file The jar to check
+     * @param art The manifest entry for the jar, or {@code null} if none
+     * @return A description of the problem, or {@code null} if the jar is fine
+     * @throws IOException Failure to read the jar
+     */
+    private String check(File file, VersionManifest.Artifact art) throws IOException {
+        if (!file.isFile()) {
+            return "missing " + file;
+        }
+        if (art == null || art.getSha1() == null) {
+            return null;
+        }
+        if (art.getSize() >= 0 && file.length() != art.getSize()) {
+            return "size mismatch for " + file + " (expected " + art.getSize() + ", found " + file.length() + ")";
+        }
+        String sha1 = this.index.hash(file);
+        if (!sha1.equalsIgnoreCase(art.getSha1())) {
+            this.index.forget(file);
+            return "hash mismatch for " + file + " (expected " + art.getSha1() + ", found " + sha1 + ")";
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed-size ring buffer holding the last lines of a client's output.
+ * Memory use is bounded by the capacity, regardless of how much is logged.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LogBuffer implements LogSink {
+
+    /** The ring of lines, guarded by {@code this} */
+    private final LogLine[] lines;
+    /** The index the next line will be written to */
+    private int head;
+    /** The number of lines held */
+    private int size;
+    /** The number of lines ever accepted */
+    private long total;
+
+    /**
+     * Constructs a new {@link LogBuffer}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param capacity The number of lines to keep
+     */
+    public LogBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.lines = new LogLine[capacity];
+    }
+
+    @Override
+    public synchronized void accept(LogLine line) {
+        this.lines[this.head] = line;
+        this.head = (this.head + 1) % this.lines.length;
+        if (this.size < this.lines.length) {
+            this.size++;
+        }
+        this.total++;
+    }
+
+    /**
+     * Returns up to the last {@code count} lines, oldest first
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param count The maximum number of lines to return
+     * @return The most recent lines
+     */
+    public synchronized List<LogLine> tail(int count) {
+        int n = Math.max(0, Math.min(count, this.size));
+        List<LogLine> back = new ArrayList<>(n);
+        int start = this.head - n + this.lines.length;
+        for (int i = 0; i < n; i++) {
+            back.add(this.lines[(start + i) % this.lines.length]);
+        }
+        return back;
+    }
+
+    /**
+     * Returns all lines currently held, oldest first
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The held lines
+     */
+    public List<LogLine> getLines() {
+        return this.tail(this.lines.length);
+    }
+
+    /**
+     * Returns the number of lines this buffer can hold
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The buffer capacity
+     */
+    public int getCapacity() {
+        return this.lines.length;
+    }
+
+    /**
+     * Returns the number of lines ever written to this buffer, including
+     * those that have since been overwritten
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The total line count
+     */
+    public synchronized long getTotal() {
+        return this.total;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+/**
+ * A single line of output from a client process
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class LogLine {
+
+    /** The name of the client instance the line came from */
+    private final String instance;
+    /** The stream the line was read from */
+    private final Source source;
+    /** The time the line was read, in epoch milliseconds */
+    private final long time;
+    /** The line's text, without a line terminator */
+    private final String text;
+
+    /**
+     * Constructs a new {@link LogLine}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param instance The name of the client instance
+     * @param source The stream the line was read from
+     * @param time The time the line was read, in epoch milliseconds
+     * @param text The line's text
+     */
+    public LogLine(String instance, Source source, long time, String text) {
+        this.instance = instance;
+        this.source = source;
+        this.time = time;
+        this.text = text;
+    }
+
+    /**
+     * Returns the name of the client instance the line came from
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The instance name
+     */
+    public String getInstance() {
+        return this.instance;
+    }
+
+    /**
+     * Returns the stream the line was read from
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The line's {@link Source}
+     */
+    public Source getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the time the line was read, in epoch milliseconds
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The read time
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the line's text, without a line terminator
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The line text
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.instance + "/" + this.source + "] " + this.text;
+    }
+
+    /**
+     * The output streams of a client process
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum Source {
+        STDOUT,
+        STDERR,
+        ;
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+/**
+ * Receives lines of client output from the {@link OutputPump}. Sinks are
+ * called on the pump thread, so implementations must not block; anything
+ * slow should be handed off, as {@link FileLogSink} does.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+@FunctionalInterface
+public interface LogSink {
+
+    /**
+     * Accepts a line of client output
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param line The {@link LogLine} to accept
+     */
+    public void accept(LogLine line);
+
+    /**
+     * Called once the stream a sink was attached to has closed
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param instance The name of the client instance that closed
+     */
+    default public void closed(String instance) {
+    }
+
+    /**
+     * Returns a sink that prints every line to stdout
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return A console {@link LogSink}
+     */
+    public static LogSink console() {
+        return System.out::println;
+    }
+
+}
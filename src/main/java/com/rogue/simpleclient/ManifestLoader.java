@@ -0,0 +1,644 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Loads version manifests from {@code versions/<ver>/<ver>.json}. Manifests
+ * are read with json-simple's streaming {@link ContentHandler} interface, so
+ * only the fields SimpleClient needs are ever materialized, and the resolved
+ * result is written to a binary cache file next to the manifest. The cache is
+ * used for as long as every manifest in the inheritance chain keeps its
+ * modification time and size.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class ManifestLoader {
+
+    /** Marks a resolved manifest cache file */
+    private static final int MAGIC = 0x53434D46;
+    /** The cache format, bumped whenever the layout changes */
+    private static final int FORMAT = 1;
+    /** The name of the current operating system, as used in manifest rules */
+    static final String OS_NAME = ManifestLoader.osName();
+    /** The bitness of the current JVM, as used in natives classifiers */
+    static final String ARCH = System.getProperty("os.arch").endsWith("64") ? "64" : "32";
+    /** Identifies the platform a cache file's rules were evaluated for */
+    static final String PLATFORM = OS_NAME + "/" + System.getProperty("os.arch") + "/" + System.getProperty("os.version");
+
+    private ManifestLoader() {
+    }
+
+    /**
+     * Loads the resolved manifest of a version, using the binary cache when
+     * it is still valid
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @param version The version to load
+     * @return The resolved manifest, or {@code null} if the version has no
+     *         manifest file
+     * @throws IOException Failure to read a manifest
+     */
+    public static VersionManifest load(File minecraftDir, String version) throws IOException {
+        return ManifestLoader.load(minecraftDir, version, new ArrayList<>());
+    }
+
+    /**
+     * Loads the resolved manifest of a version, collecting the manifest files
+     * it was resolved from
+     *
+     * @param minecraftDir The minecraft directory
+     * @param version The version to load
+     * @param inputs Receives every manifest file in the inheritance chain
+     * @return The resolved manifest, or {@code null} if the version has no
+     *         manifest file
+     * @throws IOException Failure to read a manifest
+     */
+    static VersionManifest load(File minecraftDir, String version, List<File> inputs) throws IOException {
+        File json = ManifestLoader.manifestFile(minecraftDir, version);
+        if (!json.isFile()) {
+            return null;
+        }
+        File cache = new File(json.getParentFile(), version + ".simpleclient.bin");
+        VersionManifest back = ManifestLoader.readCache(cache, inputs);
+        if (back != null) {
+            return back;
+        }
+        inputs.clear();
+        back = ManifestLoader.resolve(minecraftDir, version, inputs, new HashSet<>());
+        try {
+            ManifestLoader.writeCache(cache, inputs, back);
+        } catch (IOException ex) {
+            System.err.println("Could not write manifest cache " + cache + ": " + ex.getMessage());
+        }
+        return back;
+    }
+
+    /**
+     * Returns the manifest file of a version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @param version The version
+     * @return The manifest file, which may not exist
+     */
+    public static File manifestFile(File minecraftDir, String version) {
+        return new File(new File(new File(minecraftDir, "versions"), version), version + ".json");
+    }
+
+    /**
+     * Parses a manifest and merges in the manifests it inherits from
+     *
+     * @param minecraftDir The minecraft directory
+     * @param version The version to resolve
+     * @param inputs Collects every manifest file that was read
+     * @param seen Versions already visited, to catch inheritance cycles
+     * @return The resolved manifest
+     * @throws IOException Failure to read a manifest
+     */
+    private static VersionManifest resolve(File minecraftDir, String version, List<File> inputs, Set<String> seen) throws IOException {
+        if (!seen.add(version)) {
+            throw new IOException("Cyclic inheritsFrom for version " + version);
+        }
+        File json = ManifestLoader.manifestFile(minecraftDir, version);
+        if (!json.isFile()) {
+            throw new IOException("Missing manifest for version " + version + ": " + json);
+        }
+        inputs.add(json);
+        Handler h = new Handler();
+        try (Reader r = Files.newBufferedReader(json.toPath(), StandardCharsets.UTF_8)) {
+            new JSONParser().parse(r, h);
+        } catch (ParseException ex) {
+            throw new IOException("Malformed manifest " + json + ": " + ex, ex);
+        }
+        String id = h.fields.getOrDefault("id", version);
+        List<String> jvm = h.jvm;
+        List<String> game = h.game;
+        if (game == null && h.fields.containsKey("minecraftArguments")) {
+            game = new ArrayList<>();
+            for (String arg : h.fields.get("minecraftArguments").split(" ")) {
+                if (!arg.isEmpty()) {
+                    game.add(arg);
+                }
+            }
+        }
+        VersionManifest parent = null;
+        String inherits = h.fields.get("inheritsFrom");
+        if (inherits != null) {
+            parent = ManifestLoader.resolve(minecraftDir, inherits, inputs, seen);
+        }
+        Map<String, VersionManifest.Artifact> libs = new LinkedHashMap<>();
+        Map<String, VersionManifest.Artifact> natives = new LinkedHashMap<>();
+        h.libraries.forEach(l -> l.into(libs, natives));
+        String jar = h.fields.get("jar");
+        if (parent == null) {
+            if (jvm == null) {
+                jvm = VersionManifest.DEFAULT_JVM_ARGUMENTS;
+            }
+            if (game == null) {
+                game = Collections.emptyList();
+            }
+            return new VersionManifest(id, h.fields.get("type"), h.fields.get("mainClass"), jar == null ? id : jar,
+                    h.fields.get("assets"), h.fields.get("assetIndex/sha1"), h.fields.get("assetIndex/url"),
+                    jvm, game, new ArrayList<>(libs.values()), new ArrayList<>(natives.values()));
+        }
+        // Child libraries take precedence over the parent's copies
+        for (VersionManifest.Artifact a : parent.getLibraries()) {
+            libs.putIfAbsent(ManifestLoader.artifactKey(a.getPath()), a);
+        }
+        for (VersionManifest.Artifact a : parent.getNatives()) {
+            natives.putIfAbsent(ManifestLoader.artifactKey(a.getPath()), a);
+        }
+        // New-style arguments extend the parent's, legacy ones replace them
+        if (jvm == null) {
+            jvm = parent.getJvmArguments();
+        } else {
+            jvm = ManifestLoader.concat(parent.getJvmArguments(), jvm);
+        }
+        if (game == null) {
+            game = parent.getGameArguments();
+        } else if (h.game != null) {
+            game = ManifestLoader.concat(parent.getGameArguments(), game);
+        }
+        String assets = h.fields.get("assets");
+        boolean ownAssets = assets != null;
+        return new VersionManifest(id, ManifestLoader.or(h.fields.get("type"), parent.getType()),
+                ManifestLoader.or(h.fields.get("mainClass"), parent.getMainClass()),
+                jar == null ? parent.getJar() : jar, ownAssets ? assets : parent.getAssets(),
+                ownAssets ? h.fields.get("assetIndex/sha1") : parent.getAssetIndexSha1(),
+                ownAssets ? h.fields.get("assetIndex/url") : parent.getAssetIndexUrl(),
+                jvm, game, new ArrayList<>(libs.values()), new ArrayList<>(natives.values()));
+    }
+
+    /**
+     * Reads a cached manifest, if the cache exists and all of its inputs are
+     * unchanged
+     *
+     * @param cache The cache file
+     * @param inputs Receives the manifest files the cache was resolved from
+     * @return The cached manifest, or {@code null} if unusable
+     */
+    private static VersionManifest readCache(File cache, List<File> inputs) {
+        if (!cache.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !PLATFORM.equals(in.readUTF())) {
+                return null;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                File f = new File(in.readUTF());
+                long mtime = in.readLong();
+                long size = in.readLong();
+                if (f.lastModified() != mtime || f.length() != size) {
+                    return null;
+                }
+                inputs.add(f);
+            }
+            return VersionManifest.read(in);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Atomically writes a resolved manifest to its cache file
+     *
+     * @param cache The cache file
+     * @param inputs The manifest files the result was resolved from
+     * @param manifest The resolved manifest
+     * @throws IOException Failure to write the cache
+     */
+    private static void writeCache(File cache, List<File> inputs, VersionManifest manifest) throws IOException {
+        Path target = cache.toPath();
+        Path tmp = Files.createTempFile(target.getParent(), cache.getName(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(PLATFORM);
+                out.writeInt(inputs.size());
+                for (File f : inputs) {
+                    out.writeUTF(f.getAbsolutePath());
+                    out.writeLong(f.lastModified());
+                    out.writeLong(f.length());
+                }
+                manifest.write(out);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Converts a maven coordinate ({@code group:artifact:version[:classifier]})
+     * into a path relative to the libraries folder
+     *
+     * @param name The maven coordinate
+     * @param classifier An extra classifier to append, or {@code null}
+     * @return The relative jar path
+     */
+    static String mavenPath(String name, String classifier) {
+        String[] parts = name.split(":");
+        if (parts.length < 3) {
+            return name;
+        }
+        String file = parts[1] + "-" + parts[2];
+        if (parts.length > 3) {
+            file += "-" + parts[3];
+        }
+        if (classifier != null) {
+            file += "-" + classifier;
+        }
+        return parts[0].replace('.', '/') + "/" + parts[1] + "/" + parts[2] + "/" + file + ".jar";
+    }
+
+    /**
+     * Returns a key identifying a library independent of its version, used
+     * to let inheriting manifests override their parent's libraries
+     *
+     * @param path The relative jar path
+     * @return The library key
+     */
+    private static String artifactKey(String path) {
+        String[] parts = path.replace('\\', '/').split("/");
+        if (parts.length < 3) {
+            return path;
+        }
+        String file = parts[parts.length - 1];
+        String artifactVersion = parts[parts.length - 2];
+        String classifier = file.substring(Math.min(file.length(),
+                parts[parts.length - 3].length() + artifactVersion.length() + 1));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < parts.length - 2; i++) {
+            sb.append(parts[i]).append('/');
+        }
+        return sb.append(classifier).toString();
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> back = new ArrayList<>(first.size() + second.size());
+        back.addAll(first);
+        back.addAll(second);
+        return back;
+    }
+
+    private static String or(String value, String def) {
+        return value == null ? def : value;
+    }
+
+    private static String osName() {
+        String name = System.getProperty("os.name").toLowerCase(Locale.ROOT);
+        if (name.contains("win")) {
+            return "windows";
+        } else if (name.contains("mac") || name.contains("darwin")) {
+            return "osx";
+        }
+        return "linux";
+    }
+
+    /**
+     * A single {@code rules} entry of a library or argument
+     */
+    private static final class Rule {
+
+        private boolean allow = true;
+        private String os;
+        private String arch;
+        private String version;
+        private boolean features;
+
+        private boolean matches() {
+            if (this.features) {
+                return false;
+            }
+            if (this.os != null && !this.os.equals(OS_NAME)) {
+                return false;
+            }
+            if (this.arch != null && !this.arch.equals(System.getProperty("os.arch"))
+                    && !("x86".equals(this.arch) && "32".equals(ARCH))) {
+                return false;
+            }
+            if (this.version != null) {
+                try {
+                    return Pattern.compile(this.version).matcher(System.getProperty("os.version")).find();
+                } catch (PatternSyntaxException ex) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean allowed(List<Rule> rules) {
+            if (rules.isEmpty()) {
+                return true;
+            }
+            boolean allowed = false;
+            for (Rule r : rules) {
+                if (r.matches()) {
+                    allowed = r.allow;
+                }
+            }
+            return allowed;
+        }
+
+    }
+
+    /**
+     * A conditional argument, from the {@code arguments} block
+     */
+    private static final class Argument {
+
+        private final List<Rule> rules = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+
+    }
+
+    /**
+     * A single {@code libraries} entry
+     */
+    private static final class Lib {
+
+        private final List<Rule> rules = new ArrayList<>();
+        private final Map<String, String> natives = new HashMap<>();
+        private final Map<String, String[]> downloads = new HashMap<>();
+        private final List<String> excludes = new ArrayList<>();
+        private String name;
+
+        private String[] download(String key) {
+            return this.downloads.computeIfAbsent(key, k -> new String[3]);
+        }
+
+        /**
+         * Adds this library to the classpath or natives, if its rules allow
+         * it on this platform
+         */
+        private void into(Map<String, VersionManifest.Artifact> libs, Map<String, VersionManifest.Artifact> natives) {
+            if (this.name == null || !Rule.allowed(this.rules)) {
+                return;
+            }
+            String nativeClassifier = this.natives.get(OS_NAME);
+            if (nativeClassifier != null) {
+                nativeClassifier = nativeClassifier.replace("${arch}", ARCH);
+                VersionManifest.Artifact art = this.artifact(this.downloads.get("classifiers/" + nativeClassifier),
+                        ManifestLoader.mavenPath(this.name, nativeClassifier));
+                natives.putIfAbsent(ManifestLoader.artifactKey(art.getPath()), art);
+                return;
+            }
+            VersionManifest.Artifact art = this.artifact(this.downloads.get("artifact"), ManifestLoader.mavenPath(this.name, null));
+            libs.putIfAbsent(ManifestLoader.artifactKey(art.getPath()), art);
+        }
+
+        private VersionManifest.Artifact artifact(String[] dl, String fallback) {
+            String path = dl != null && dl[0] != null ? dl[0] : fallback;
+            String sha1 = dl == null ? null : dl[1];
+            long size = -1;
+            if (dl != null && dl[2] != null) {
+                try {
+                    size = Long.parseLong(dl[2]);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            return new VersionManifest.Artifact(path, sha1, size, this.excludes);
+        }
+
+    }
+
+    /**
+     * Streams through a manifest, keeping only the fields that are needed.
+     * The current position is tracked as a slash-separated path, with
+     * {@code []} standing in for array elements.
+     */
+    private static final class Handler implements ContentHandler {
+
+        private static final String LIB = "/libraries/[]";
+        private final StringBuilder path = new StringBuilder();
+        private int[] marks = new int[16];
+        private int depth;
+        private final Map<String, String> fields = new HashMap<>();
+        private final List<Lib> libraries = new ArrayList<>();
+        private List<String> game;
+        private List<String> jvm;
+        private Lib lib;
+        private Argument arg;
+        private Rule rule;
+
+        private void push(String segment) {
+            if (this.depth == this.marks.length) {
+                this.marks = Arrays.copyOf(this.marks, this.depth * 2);
+            }
+            this.marks[this.depth++] = this.path.length();
+            this.path.append('/').append(segment);
+        }
+
+        private void pop() {
+            this.path.setLength(this.marks[--this.depth]);
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            String p = this.path.toString();
+            if (p.equals(LIB)) {
+                this.lib = new Lib();
+            } else if (p.equals("/arguments/game/[]") || p.equals("/arguments/jvm/[]")) {
+                this.arg = new Argument();
+            } else if (p.endsWith("/rules/[]")) {
+                this.rule = new Rule();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            String p = this.path.toString();
+            if (p.equals(LIB)) {
+                this.libraries.add(this.lib);
+                this.lib = null;
+            } else if (p.equals("/arguments/game/[]") || p.equals("/arguments/jvm/[]")) {
+                if (Rule.allowed(this.arg.rules)) {
+                    this.arguments(p).addAll(this.arg.values);
+                }
+                this.arg = null;
+            } else if (p.endsWith("/rules/[]") && this.rule != null) {
+                if (this.arg != null) {
+                    this.arg.rules.add(this.rule);
+                } else if (this.lib != null) {
+                    this.lib.rules.add(this.rule);
+                }
+                this.rule = null;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            this.push(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            this.pop();
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            String p = this.path.toString();
+            if (p.equals("/arguments/game") || p.equals("/arguments/jvm")) {
+                this.arguments(p + "/[]");
+            }
+            this.push("[]");
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            this.pop();
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (value == null) {
+                return true;
+            }
+            String p = this.path.toString();
+            String v = value.toString();
+            if (this.rule != null) {
+                int idx = p.lastIndexOf("/rules/[]/");
+                if (idx >= 0) {
+                    this.rule(p.substring(idx + 10), v);
+                    return true;
+                }
+            }
+            if (this.lib != null && p.startsWith(LIB + "/")) {
+                this.library(p.substring(LIB.length() + 1), v);
+            } else if (this.arg != null) {
+                if (p.endsWith("/[]/value") || p.endsWith("/[]/value/[]")) {
+                    this.arg.values.add(v);
+                }
+            } else if (p.equals("/arguments/game/[]") || p.equals("/arguments/jvm/[]")) {
+                this.arguments(p).add(v);
+            } else if (this.depth == 1 || p.startsWith("/assetIndex/")) {
+                this.fields.put(p.substring(1), v);
+            }
+            return true;
+        }
+
+        private List<String> arguments(String p) {
+            if (p.startsWith("/arguments/game")) {
+                if (this.game == null) {
+                    this.game = new ArrayList<>();
+                }
+                return this.game;
+            }
+            if (this.jvm == null) {
+                this.jvm = new ArrayList<>();
+            }
+            return this.jvm;
+        }
+
+        private void rule(String key, String value) {
+            switch (key) {
+                case "action":
+                    this.rule.allow = "allow".equals(value);
+                    break;
+                case "os/name":
+                    this.rule.os = value;
+                    break;
+                case "os/arch":
+                    this.rule.arch = value;
+                    break;
+                case "os/version":
+                    this.rule.version = value;
+                    break;
+                default:
+                    if (key.startsWith("features/")) {
+                        this.rule.features = true;
+                    }
+            }
+        }
+
+        private void library(String key, String value) {
+            if (key.equals("name")) {
+                this.lib.name = value;
+            } else if (key.startsWith("natives/")) {
+                this.lib.natives.put(key.substring(8), value);
+            } else if (key.equals("extract/exclude/[]")) {
+                this.lib.excludes.add(value);
+            } else if (key.startsWith("downloads/")) {
+                int slash = key.lastIndexOf('/');
+                String field = key.substring(slash + 1);
+                int idx = field.equals("path") ? 0 : field.equals("sha1") ? 1 : field.equals("size") ? 2 : -1;
+                if (idx >= 0 && slash > 10) {
+                    this.lib.download(key.substring(10, slash))[idx] = value;
+                }
+            }
+        }
+
+    }
+
+}
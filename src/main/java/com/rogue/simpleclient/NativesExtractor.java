@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts the natives of a {@link LaunchPlan} into its natives folder. Jars
+ * are processed in parallel and entries are streamed straight to disk.
+ * <br /><br />
+ * A state file in the natives folder records each source jar's size and
+ * modification time along with the size, CRC and modification time of every
+ * file extracted from it. A jar that is unchanged, and whose extracted files
+ * are all still in place, is skipped after a handful of {@code stat} calls;
+ * otherwise only the entries whose size or CRC differ are rewritten.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class NativesExtractor {
+
+    /** The name of the state file kept in the natives folder */
+    private static final String STATE_FILE = ".simpleclient-natives";
+    /** Marks a state file */
+    private static final int MAGIC = 0x53434E58;
+    /** The state format, bumped whenever the layout changes */
+    private static final int FORMAT = 1;
+    /** The pool jars are extracted on */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.min(4, Runtime.getRuntime().availableProcessors()));
+    /** Serializes extraction into the same folder within this process */
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private NativesExtractor() {
+    }
+
+    /**
+     * Brings the natives folder of a plan up to date
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} whose natives to extract
+     * @return The number of files that were written
+     * @throws IOException Failure to read a jar or write a native
+     */
+    public static int extract(LaunchPlan plan) throws IOException {
+        File libraries = new File(plan.getMinecraftDir(), "libraries");
+        File target = plan.getNatives();
+        synchronized (LOCKS.computeIfAbsent(target.getAbsolutePath(), k -> new Object())) {
+            Files.createDirectories(target.toPath());
+            File stateFile = new File(target, STATE_FILE);
+            Map<String, JarState> state = NativesExtractor.readState(stateFile);
+            List<Callable<JarState>> tasks = new ArrayList<>();
+            for (VersionManifest.Artifact art : plan.getManifest().getNatives()) {
+                File jar = new File(libraries, art.getPath());
+                JarState old = state.get(jar.getAbsolutePath());
+                tasks.add(() -> NativesExtractor.extract(jar, art.getExcludes(), target, old));
+            }
+            Map<String, JarState> updated = new HashMap<>();
+            List<String> problems = new ArrayList<>();
+            int written = 0;
+            for (Future<JarState> f : POOL.invokeAll(tasks)) {
+                try {
+                    JarState js = f.get();
+                    updated.put(js.jar, js);
+                    written += js.written;
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting natives", ex);
+                } catch (ExecutionException ex) {
+                    problems.add(ex.getCause().getMessage());
+                }
+            }
+            if (!problems.isEmpty()) {
+                throw new VerificationException(problems);
+            }
+            if (written > 0 || !updated.keySet().equals(state.keySet())) {
+                NativesExtractor.writeState(stateFile, updated);
+            }
+            return written;
+        }
+    }
+
+    /**
+     * Extracts a single jar, skipping it entirely if nothing changed
+     *
+     * @param jar The natives jar
+     * @param excludes Entry prefixes not to extract
+     * @param target The natives folder
+     * @param old The state recorded for the jar on the last run, or
+     *            {@code null}
+     * @return The new state for the jar
+     * @throws IOException Failure to read the jar or write a file
+     */
+    private static JarState extract(File jar, List<String> excludes, File target, JarState old) throws IOException {
+        if (!jar.isFile()) {
+            throw new IOException("missing natives jar " + jar);
+        }
+        long size = jar.length();
+        long mtime = jar.lastModified();
+        if (old != null && old.size == size && old.mtime == mtime && old.intact(target)) {
+            return old;
+        }
+        JarState back = new JarState(jar.getAbsolutePath(), size, mtime);
+        Path root = target.toPath().toAbsolutePath().normalize();
+        byte[] buf = new byte[16384];
+        try (ZipFile zip = new ZipFile(jar)) {
+            for (Enumeration<? extends ZipEntry> en = zip.entries(); en.hasMoreElements();) {
+                ZipEntry e = en.nextElement();
+                if (e.isDirectory() || NativesExtractor.excluded(e.getName(), excludes)) {
+                    continue;
+                }
+                Path out = root.resolve(e.getName()).normalize();
+                if (!out.startsWith(root)) {
+                    continue;
+                }
+                File file = out.toFile();
+                Extracted prev = old == null ? null : old.files.get(e.getName());
+                boolean current = file.isFile() && file.length() == e.getSize()
+                        && (prev != null && prev.crc == e.getCrc() && prev.mtime == file.lastModified()
+                        || NativesExtractor.crc(file, buf) == e.getCrc());
+                if (!current) {
+                    NativesExtractor.write(zip, e, out);
+                    back.written++;
+                }
+                back.files.put(e.getName(), new Extracted(e.getName(), file.length(), e.getCrc(), file.lastModified()));
+            }
+        }
+        return back;
+    }
+
+    private static boolean excluded(String name, List<String> excludes) {
+        for (String ex : excludes) {
+            if (name.startsWith(ex)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long crc(File file, byte[] buf) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Streams a zip entry to a temporary file, then moves it into place so
+     * that a concurrently starting client never sees a partial library
+     */
+    private static void write(ZipFile zip, ZipEntry e, Path out) throws IOException {
+        Files.createDirectories(out.getParent());
+        Path tmp = Files.createTempFile(out.getParent(), ".extract", ".tmp");
+        try {
+            try (InputStream in = zip.getInputStream(e)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try {
+                Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static Map<String, JarState> readState(File file) {
+        Map<String, JarState> back = new HashMap<>();
+        if (!file.isFile()) {
+            return back;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return back;
+            }
+            int jars = in.readInt();
+            for (int i = 0; i < jars; i++) {
+                JarState js = new JarState(in.readUTF(), in.readLong(), in.readLong());
+                int files = in.readInt();
+                for (int j = 0; j < files; j++) {
+                    Extracted ex = new Extracted(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                    js.files.put(ex.name, ex);
+                }
+                back.put(js.jar, js);
+            }
+        } catch (IOException ex) {
+            back.clear();
+        }
+        return back;
+    }
+
+    private static void writeState(File file, Map<String, JarState> state) throws IOException {
+        Path target = file.toPath();
+        Path tmp = Files.createTempFile(target.getParent(), STATE_FILE, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeInt(state.size());
+                for (JarState js : state.values()) {
+                    out.writeUTF(js.jar);
+                    out.writeLong(js.size);
+                    out.writeLong(js.mtime);
+                    out.writeInt(js.files.size());
+                    for (Extracted ex : js.files.values()) {
+                        out.writeUTF(ex.name);
+                        out.writeLong(ex.size);
+                        out.writeLong(ex.crc);
+                        out.writeLong(ex.mtime);
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * What was extracted from a jar on the last run
+     */
+    private static final class JarState {
+
+        private final String jar;
+        private final long size;
+        private final long mtime;
+        private final Map<String, Extracted> files = new HashMap<>();
+        private int written;
+
+        public JarState(String jar, long size, long mtime) {
+            this.jar = jar;
+            this.size = size;
+            this.mtime = mtime;
+        }
+
+        /**
+         * Checks that every file extracted from this jar is still in place
+         *
+         * @param target The natives folder
+         * @return {@code true} if no extracted file was changed or removed
+         */
+        public boolean intact(File target) {
+            for (Extracted ex : this.files.values()) {
+                File f = new File(target, ex.name);
+                if (f.length() != ex.size || f.lastModified() != ex.mtime) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * A single extracted file
+     */
+    private static final class Extracted {
+
+        private final String name;
+        private final long size;
+        private final long crc;
+        private final long mtime;
+
+        public Extracted(String name, long size, long crc, long mtime) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+            this.mtime = mtime;
+        }
+
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the output of any number of client processes on a single thread.
+ * Streams are polled with {@link InputStream#available()} and only ever read
+ * as far as is available, so a quiet client never parks the pump, and a
+ * chatty client cannot stall on a full pipe buffer.
+ * <br /><br />
+ * Each stream keeps one fixed-size line buffer; lines longer than it are
+ * split, so memory per client stays flat.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class OutputPump {
+
+    /** The shared default pump, created on first use */
+    private static volatile OutputPump def;
+    /** Longest pause between polls when there is no output, in nanoseconds */
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    /** How long a stream must stay empty after its process exited before it is dropped */
+    private static final long DRAIN_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    /** The maximum number of bytes in a single line */
+    private final int maxLineBytes;
+    /** The charset client output is decoded with */
+    private final Charset charset = Charset.defaultCharset();
+    /** The streams being drained */
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+    /** Scratch buffer used for every read */
+    private final byte[] buffer = new byte[8192];
+    /** The pump thread */
+    private final Thread thread;
+
+    /**
+     * Constructs and starts a new {@link OutputPump}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxLineBytes The maximum number of bytes in a single line
+     */
+    public OutputPump(int maxLineBytes) {
+        this.maxLineBytes = Math.max(80, maxLineBytes);
+        this.thread = new Thread(this::run, "SimpleClient-output");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Returns the shared pump used by {@link SimpleClient}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The default {@link OutputPump}
+     */
+    public static OutputPump getDefault() {
+        OutputPump back = OutputPump.def;
+        if (back == null) {
+            synchronized (OutputPump.class) {
+                back = OutputPump.def;
+                if (back == null) {
+                    OutputPump.def = back = new OutputPump(4096);
+                }
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Starts draining the stdout and stderr of a process into the supplied
+     * sinks. Streams are dropped once the process has exited and they have
+     * stayed empty for a short while, so output still held by an exited
+     * process or a child that inherited its streams is picked up without
+     * ever blocking the pump.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param instance The name of the client instance
+     * @param process The process to drain
+     * @param sinks The sinks to pass each line to
+     */
+    public void attach(String instance, Process process, List<LogSink> sinks) {
+        List<LogSink> copy = new ArrayList<>(sinks);
+        int[] open = {2};
+        this.channels.add(new Channel(instance, LogLine.Source.STDOUT, process, process.getInputStream(), copy, open));
+        this.channels.add(new Channel(instance, LogLine.Source.STDERR, process, process.getErrorStream(), copy, open));
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Returns the number of streams currently being drained
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The open stream count
+     */
+    public int getOpenStreams() {
+        return this.channels.size();
+    }
+
+    private void run() {
+        long idle = 0;
+        while (true) {
+            boolean active = false;
+            for (Iterator<Channel> itr = this.channels.iterator(); itr.hasNext();) {
+                Channel c = itr.next();
+                try {
+                    active |= c.pump();
+                } catch (IOException ex) {
+                    c.finish();
+                }
+                if (c.done) {
+                    this.channels.remove(c);
+                }
+            }
+            if (active) {
+                idle = 0;
+            } else {
+                idle = idle == 0 ? TimeUnit.MILLISECONDS.toNanos(1) : Math.min(idle * 2, MAX_IDLE_NANOS);
+                LockSupport.parkNanos(this, idle);
+            }
+        }
+    }
+
+    /**
+     * A single process stream and its partial-line state
+     */
+    private final class Channel {
+
+        private final String instance;
+        private final LogLine.Source source;
+        private final Process process;
+        private final InputStream in;
+        private final List<LogSink> sinks;
+        private final int[] open;
+        private final byte[] line = new byte[OutputPump.this.maxLineBytes];
+        private int len;
+        private boolean done;
+        /** When the stream was first seen empty after the process exited, or {@code 0} */
+        private long emptySince;
+
+        public Channel(String instance, LogLine.Source source, Process process, InputStream in, List<LogSink> sinks, int[] open) {
+            this.instance = instance;
+            this.source = source;
+            this.process = process;
+            this.in = in;
+            this.sinks = sinks;
+            this.open = open;
+        }
+
+        /**
+         * Reads whatever is available without blocking
+         *
+         * @return {@code true} if any bytes were read
+         * @throws IOException Failure reading the stream
+         */
+        public boolean pump() throws IOException {
+            byte[] buf = OutputPump.this.buffer;
+            int avail = this.in.available();
+            if (avail <= 0) {
+                if (this.process.isAlive()) {
+                    return false;
+                }
+                // The pipe may not be drained yet, or may be held open by a
+                // grandchild, so never read past what is available
+                long now = System.nanoTime();
+                if (this.emptySince == 0) {
+                    this.emptySince = now;
+                } else if (now - this.emptySince >= OutputPump.DRAIN_NANOS) {
+                    this.finish();
+                }
+                return false;
+            }
+            this.emptySince = 0;
+            int n = this.in.read(buf, 0, Math.min(avail, buf.length));
+            if (n < 0) {
+                this.finish();
+                return false;
+            }
+            this.consume(buf, n);
+            return true;
+        }
+
+        private void consume(byte[] buf, int n) {
+            for (int i = 0; i < n; i++) {
+                byte b = buf[i];
+                if (b == '\n') {
+                    this.emit();
+                } else {
+                    if (this.len == this.line.length) {
+                        this.split();
+                    }
+                    this.line[this.len++] = b;
+                }
+            }
+        }
+
+        /**
+         * Emits a line that reached the length limit, carrying a trailing
+         * partial UTF-8 sequence over to the next line so neither half is
+         * decoded into replacement characters
+         */
+        private void split() {
+            int cut = this.len;
+            int lead = this.len - 1;
+            while (lead > 0 && lead > this.len - 4 && (this.line[lead] & 0xC0) == 0x80) {
+                lead--;
+            }
+            if ((this.line[lead] & 0xC0) == 0xC0) {
+                cut = lead;
+            }
+            int rest = this.len - cut;
+            this.emit(cut);
+            System.arraycopy(this.line, cut, this.line, 0, rest);
+            this.len = rest;
+        }
+
+        private void emit() {
+            this.emit(this.len);
+        }
+
+        private void emit(int length) {
+            int end = length;
+            if (end > 0 && this.line[end - 1] == '\r') {
+                end--;
+            }
+            LogLine out = new LogLine(this.instance, this.source, System.currentTimeMillis(),
+                    new String(this.line, 0, end, OutputPump.this.charset));
+            this.len = 0;
+            for (LogSink sink : this.sinks) {
+                try {
+                    sink.accept(out);
+                } catch (RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+
+        public void finish() {
+            if (this.done) {
+                return;
+            }
+            if (this.len > 0) {
+                this.emit();
+            }
+            this.done = true;
+            try {
+                this.in.close();
+            } catch (IOException ignored) {
+            }
+            if (--this.open[0] == 0) {
+                this.sinks.forEach(s -> s.closed(this.instance));
+            }
+        }
+
+    }
+
+}
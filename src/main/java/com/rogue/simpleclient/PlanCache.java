@@ -0,0 +1,626 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * Persists compiled {@link LaunchPlan LaunchPlans} to
+ * {@code .minecraft/simpleclient/plans/<version>.plan}, together with the
+ * size and modification time of the files the last successful library
+ * verification and natives extraction saw. After a restart, a plan is
+ * restored with a {@code stat} of its manifests instead of being resolved
+ * again, and verification and extraction are skipped while their files are
+ * unchanged.
+ * <br /><br />
+ * Within a process, the directories holding those files are watched with a
+ * {@link WatchService}, so a change only invalidates the part of the entry it
+ * affects: an edited manifest drops the plan, a replaced library the
+ * verification, and a touched natives jar or folder the extraction. Until a
+ * change is seen, no files are checked at all. Directories that cannot be
+ * watched fall back to a {@code stat} of their files on every launch.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class PlanCache {
+
+    /** Loaded caches, one per minecraft directory */
+    private static final ConcurrentMap<String, PlanCache> LOADED = new ConcurrentHashMap<>();
+    /** Marks a plan cache file */
+    private static final int MAGIC = 0x5343504C;
+    /** The cache format, bumped whenever the layout changes */
+    private static final int FORMAT = 1;
+    /** Watches the directories of every cache, or {@code null} if unavailable */
+    private static final Watcher WATCHER = Watcher.start();
+    /** The folder the plan files are kept in */
+    private final File dir;
+    /** The entries of loaded plans, keyed by version */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private PlanCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the plan cache kept in the supplied minecraft directory
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param minecraftDir The minecraft directory
+     * @return The {@link PlanCache} for the directory
+     */
+    public static PlanCache forDirectory(File minecraftDir) {
+        File dir = new File(new File(minecraftDir.getAbsoluteFile(), "simpleclient"), "plans");
+        return LOADED.computeIfAbsent(dir.getPath(), k -> new PlanCache(dir));
+    }
+
+    /**
+     * Drops the persisted plan of a version, so that it is compiled again
+     * from its manifests on next use. The in-memory plan is dropped as well.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     */
+    public void forget(String version) {
+        Entry old = this.entries.remove(version);
+        if (old != null) {
+            old.unwatch();
+        }
+        LaunchPlan.invalidate(version, this.dir.getParentFile().getParentFile().getParentFile());
+        try {
+            Files.deleteIfExists(this.file(version).toPath());
+        } catch (IOException ex) {
+            System.err.println("Could not delete plan cache for " + version + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns whether changes are picked up through a {@link WatchService}.
+     * If not, every launch checks the recorded files instead.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return {@code true} if directories are being watched
+     */
+    public static boolean isWatching() {
+        return WATCHER != null;
+    }
+
+    /**
+     * Restores the persisted plan of a version, if its manifests are
+     * unchanged
+     *
+     * @param version The minecraft version
+     * @param appData The application data folder containing minecraft
+     * @return The restored {@link LaunchPlan}, or {@code null} if there is no
+     *         usable plan
+     */
+    LaunchPlan load(String version, File appData) {
+        File file = this.file(version);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !ManifestLoader.PLATFORM.equals(in.readUTF())
+                    || !appData.getAbsolutePath().equals(in.readUTF())) {
+                return null;
+            }
+            List<Stat> inputs = Stat.readAll(in);
+            List<File> files = new ArrayList<>(inputs.size());
+            for (Stat st : inputs) {
+                files.add(new File(st.path));
+            }
+            LaunchPlan plan = LaunchPlan.read(appData, in, files);
+            Entry entry = new Entry(version, appData, plan);
+            // watch before checking, so that a change in between is not missed
+            entry.watch(Kind.MANIFEST);
+            entry.watch(Kind.LIBRARIES);
+            entry.watch(Kind.NATIVES);
+            if (!Stat.current(inputs)) {
+                entry.unwatch();
+                return null;
+            }
+            for (Kind kind : new Kind[]{Kind.LIBRARIES, Kind.NATIVES}) {
+                List<Stat> done = in.readBoolean() ? Stat.readAll(in) : null;
+                if (done != null && done.equals(entry.snapshot(kind))) {
+                    entry.done.put(kind, done);
+                }
+            }
+            this.put(entry);
+            return plan;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Persists a freshly compiled plan
+     *
+     * @param plan The {@link LaunchPlan} to persist
+     */
+    void store(LaunchPlan plan) {
+        Entry entry = new Entry(plan.getVersion(), plan.getMinecraftDir().getParentFile(), plan);
+        entry.watch(Kind.MANIFEST);
+        entry.watch(Kind.LIBRARIES);
+        entry.watch(Kind.NATIVES);
+        this.put(entry);
+        this.save(entry);
+    }
+
+    /**
+     * Runs the library verification of a plan, unless it already passed with
+     * the classpath as it is now
+     *
+     * @param plan The {@link LaunchPlan} to verify
+     * @param verify Verifies the plan's libraries
+     * @return {@code true} if the verification was run
+     * @throws IOException If thrown by the verification
+     */
+    boolean verifyOnce(LaunchPlan plan, Step verify) throws IOException {
+        return this.once(plan, Kind.LIBRARIES, verify);
+    }
+
+    /**
+     * Runs the natives extraction of a plan, unless it already ran with the
+     * natives jars and folder as they are now
+     *
+     * @param plan The {@link LaunchPlan} whose natives to extract
+     * @param extract Extracts the plan's natives
+     * @return {@code true} if the extraction was run
+     * @throws IOException If thrown by the extraction
+     */
+    boolean extractOnce(LaunchPlan plan, Step extract) throws IOException {
+        return this.once(plan, Kind.NATIVES, extract);
+    }
+
+    private boolean once(LaunchPlan plan, Kind kind, Step step) throws IOException {
+        Entry entry = this.entries.get(plan.getVersion());
+        if (entry == null) {
+            step.run();
+            return true;
+        }
+        if (entry.isDone(kind)) {
+            return false;
+        }
+        List<Stat> before = entry.snapshot(kind);
+        step.run();
+        List<Stat> after = entry.snapshot(kind);
+        entry.watch(kind);
+        // if a file changed while the step ran, its result may already be stale
+        if (before.equals(after) && this.entries.get(plan.getVersion()) == entry) {
+            entry.done.put(kind, after);
+            this.save(entry);
+        }
+        return true;
+    }
+
+    private void put(Entry entry) {
+        Entry old = this.entries.put(entry.version, entry);
+        if (old != null && old != entry) {
+            old.unwatch();
+        }
+    }
+
+    /**
+     * Atomically writes an entry to its plan file
+     *
+     * @param entry The {@link Entry} to write
+     */
+    private void save(Entry entry) {
+        try {
+            Files.createDirectories(this.dir.toPath());
+            Path target = this.file(entry.version).toPath();
+            Path tmp = Files.createTempFile(this.dir.toPath(), entry.version, ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(FORMAT);
+                    out.writeUTF(ManifestLoader.PLATFORM);
+                    out.writeUTF(entry.appData.getAbsolutePath());
+                    Stat.writeAll(out, entry.inputs);
+                    entry.plan.write(out);
+                    for (Kind kind : new Kind[]{Kind.LIBRARIES, Kind.NATIVES}) {
+                        List<Stat> done = entry.done.get(kind);
+                        out.writeBoolean(done != null);
+                        if (done != null) {
+                            Stat.writeAll(out, done);
+                        }
+                    }
+                }
+                try {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not write plan cache for " + entry.version + ": " + ex.getMessage());
+        }
+    }
+
+    private File file(String version) {
+        return new File(this.dir, version + ".plan");
+    }
+
+    /**
+     * A step of a launch that only needs to run when its files changed
+     */
+    @FunctionalInterface
+    static interface Step {
+
+        /**
+         * Runs the step
+         *
+         * @throws IOException Failure of the step
+         */
+        void run() throws IOException;
+
+    }
+
+    /**
+     * The parts of an entry that are invalidated independently
+     */
+    private static enum Kind {
+        MANIFEST,
+        LIBRARIES,
+        NATIVES,
+        ;
+    }
+
+    /**
+     * The cached state of one version
+     */
+    private final class Entry {
+
+        private final String version;
+        private final File appData;
+        private final LaunchPlan plan;
+        private final List<Stat> inputs;
+        /** The files each step last ran against, absent if it has to run */
+        private final Map<Kind, List<Stat>> done = Collections.synchronizedMap(new EnumMap<>(Kind.class));
+        /** The parts whose directories are all watched */
+        private final Set<Kind> watched = Collections.synchronizedSet(new HashSet<>());
+        /** The watches registered for this entry, guarded by the watcher */
+        private final List<Watch> watches = new ArrayList<>();
+
+        public Entry(String version, File appData, LaunchPlan plan) {
+            this.version = version;
+            this.appData = appData;
+            this.plan = plan;
+            this.inputs = this.snapshot(Kind.MANIFEST);
+        }
+
+        /**
+         * Returns whether a step can be skipped: it ran against the current
+         * files, as far as the watcher or a {@code stat} can tell
+         */
+        public boolean isDone(Kind kind) {
+            List<Stat> stats = this.done.get(kind);
+            return stats != null && (this.watched.contains(kind) || Stat.current(stats));
+        }
+
+        /**
+         * Returns the current size and modification time of the files a part
+         * of the entry depends on
+         */
+        public List<Stat> snapshot(Kind kind) {
+            List<Stat> back = new ArrayList<>();
+            for (File f : this.files(kind)) {
+                back.add(new Stat(f));
+            }
+            return back;
+        }
+
+        private List<File> files(Kind kind) {
+            switch (kind) {
+                case MANIFEST:
+                    return this.plan.getInputs();
+                case LIBRARIES:
+                    List<File> cp = new ArrayList<>();
+                    for (String entry : this.plan.getClasspath()) {
+                        cp.add(new File(entry));
+                    }
+                    return cp;
+                default:
+                    List<File> natives = new ArrayList<>();
+                    File libraries = new File(this.plan.getMinecraftDir(), "libraries");
+                    for (VersionManifest.Artifact art : this.plan.getManifest().getNatives()) {
+                        natives.add(new File(libraries, art.getPath()));
+                    }
+                    natives.add(this.plan.getNatives());
+                    return natives;
+            }
+        }
+
+        /**
+         * Watches the directories of a part, if not already watched
+         */
+        public void watch(Kind kind) {
+            if (WATCHER == null || this.watched.contains(kind)) {
+                return;
+            }
+            Map<File, Set<String>> dirs = new HashMap<>();
+            for (File f : this.files(kind)) {
+                if (kind == Kind.NATIVES && f.equals(this.plan.getNatives())) {
+                    dirs.put(f, null);
+                } else if (!dirs.containsKey(f.getParentFile()) || dirs.get(f.getParentFile()) != null) {
+                    dirs.computeIfAbsent(f.getParentFile(), k -> new HashSet<>()).add(f.getName());
+                }
+            }
+            if (WATCHER.register(this, kind, dirs)) {
+                this.watched.add(kind);
+            }
+        }
+
+        public void unwatch() {
+            if (WATCHER != null) {
+                WATCHER.unregister(this);
+            }
+            this.watched.clear();
+        }
+
+        /**
+         * Invalidates a part of the entry after a change to one of its files
+         */
+        public void changed(Kind kind) {
+            if (kind == Kind.MANIFEST) {
+                if (PlanCache.this.entries.remove(this.version, this)) {
+                    this.unwatch();
+                    LaunchPlan.invalidate(this.version, this.appData);
+                }
+            } else {
+                this.done.remove(kind);
+            }
+        }
+
+        /**
+         * Forgets a part of the entry after one of its directories went away
+         */
+        public void lost(Kind kind) {
+            this.watched.remove(kind);
+            this.changed(kind);
+        }
+
+    }
+
+    /**
+     * The size and modification time of a file
+     */
+    private static final class Stat {
+
+        private final String path;
+        private final long mtime;
+        private final long size;
+
+        public Stat(File file) {
+            this(file.getPath(), file.lastModified(), file.length());
+        }
+
+        public Stat(String path, long mtime, long size) {
+            this.path = path;
+            this.mtime = mtime;
+            this.size = size;
+        }
+
+        public static boolean current(List<Stat> stats) {
+            for (Stat st : stats) {
+                File f = new File(st.path);
+                if (f.lastModified() != st.mtime || f.length() != st.size) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public static void writeAll(DataOutputStream out, List<Stat> stats) throws IOException {
+            out.writeInt(stats.size());
+            for (Stat st : stats) {
+                out.writeUTF(st.path);
+                out.writeLong(st.mtime);
+                out.writeLong(st.size);
+            }
+        }
+
+        public static List<Stat> readAll(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            List<Stat> back = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                back.add(new Stat(in.readUTF(), in.readLong(), in.readLong()));
+            }
+            return back;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) o;
+            return this.mtime == other.mtime && this.size == other.size && this.path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.path, this.mtime, this.size);
+        }
+
+    }
+
+    /**
+     * A directory watched for a part of an entry
+     */
+    private static final class Watch {
+
+        private final Entry entry;
+        private final Kind kind;
+        /** The file names that matter, or {@code null} for any */
+        private final Set<String> names;
+
+        public Watch(Entry entry, Kind kind, Set<String> names) {
+            this.entry = entry;
+            this.kind = kind;
+            this.names = names;
+        }
+
+    }
+
+    /**
+     * The thread that dispatches filesystem events for every cache
+     */
+    private static final class Watcher implements Runnable {
+
+        private final WatchService service;
+        /** The watches of each registered directory, guarded by {@code this} */
+        private final Map<WatchKey, List<Watch>> watches = new HashMap<>();
+        /** The key of each registered directory, guarded by {@code this} */
+        private final Map<Path, WatchKey> keys = new HashMap<>();
+
+        private Watcher(WatchService service) {
+            this.service = service;
+        }
+
+        public static Watcher start() {
+            try {
+                Watcher back = new Watcher(FileSystems.getDefault().newWatchService());
+                Launcher.daemon("SimpleClient-planwatch").newThread(back).start();
+                return back;
+            } catch (IOException | UnsupportedOperationException ex) {
+                System.err.println("Unable to watch for changes to launch plans: " + ex.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Registers directories for a part of an entry
+         *
+         * @return {@code true} if every directory could be watched
+         */
+        public synchronized boolean register(Entry entry, Kind kind, Map<File, Set<String>> dirs) {
+            this.unregister(entry, w -> w.kind == kind);
+            boolean all = true;
+            for (Map.Entry<File, Set<String>> dir : dirs.entrySet()) {
+                try {
+                    // registering goes through the service's own thread, so reuse keys where possible
+                    Path path = dir.getKey().toPath();
+                    WatchKey key = this.keys.get(path);
+                    if (key == null || !key.isValid()) {
+                        key = path.register(this.service, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                        this.keys.put(path, key);
+                    }
+                    Watch w = new Watch(entry, kind, dir.getValue());
+                    this.watches.computeIfAbsent(key, k -> new ArrayList<>()).add(w);
+                    entry.watches.add(w);
+                } catch (IOException ex) {
+                    all = false;
+                }
+            }
+            return all;
+        }
+
+        public void unregister(Entry entry) {
+            this.unregister(entry, w -> true);
+        }
+
+        /**
+         * Removes the watches of an entry that match a filter, cancelling
+         * directories nothing else watches
+         */
+        private synchronized void unregister(Entry entry, Predicate<Watch> filter) {
+            if (!entry.watches.removeIf(filter)) {
+                return;
+            }
+            for (Iterator<Map.Entry<WatchKey, List<Watch>>> itr = this.watches.entrySet().iterator(); itr.hasNext();) {
+                Map.Entry<WatchKey, List<Watch>> e = itr.next();
+                if (e.getValue().removeIf(w -> w.entry == entry && filter.test(w)) && e.getValue().isEmpty()) {
+                    itr.remove();
+                    this.keys.remove((Path) e.getKey().watchable());
+                    e.getKey().cancel();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WatchKey key;
+                try {
+                    key = this.service.take();
+                } catch (InterruptedException | ClosedWatchServiceException ex) {
+                    return;
+                }
+                List<Watch> ws;
+                synchronized (this) {
+                    ws = new ArrayList<>(this.watches.getOrDefault(key, Collections.<Watch>emptyList()));
+                }
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    String name = event.kind() == StandardWatchEventKinds.OVERFLOW ? null : event.context().toString();
+                    for (Watch w : ws) {
+                        if (name == null || w.names == null || w.names.contains(name)) {
+                            w.entry.changed(w.kind);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    synchronized (this) {
+                        this.watches.remove(key);
+                        this.keys.remove((Path) key.watchable());
+                    }
+                    ws.forEach(w -> w.entry.lost(w.kind));
+                }
+            }
+        }
+
+    }
+
+}
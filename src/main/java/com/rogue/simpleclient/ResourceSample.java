@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+/**
+ * A single reading of a client process's resource use, taken by a
+ * {@link Supervisor}
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class ResourceSample {
+
+    /** When the sample was taken, in epoch milliseconds */
+    private final long time;
+    /** The CPU time used by the process so far, in nanoseconds */
+    private final long cpuNanos;
+    /** The cores used on average since the previous sample */
+    private final double cpuLoad;
+    /** The resident set size, in bytes */
+    private final long rss;
+    /** The number of threads */
+    private final int threads;
+
+    ResourceSample(long time, long cpuNanos, double cpuLoad, long rss, int threads) {
+        this.time = time;
+        this.cpuNanos = cpuNanos;
+        this.cpuLoad = cpuLoad;
+        this.rss = rss;
+        this.threads = threads;
+    }
+
+    /**
+     * Returns when the sample was taken
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The time in epoch milliseconds
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the CPU time the process has used since it started, in user
+     * and kernel mode together
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The CPU time in nanoseconds
+     */
+    public long getCpuNanos() {
+        return this.cpuNanos;
+    }
+
+    /**
+     * Returns the number of cores the process kept busy on average since the
+     * previous sample, so {@code 1.5} is one and a half cores
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The CPU load, or {@code 0} for the first sample of a process
+     */
+    public double getCpuLoad() {
+        return this.cpuLoad;
+    }
+
+    /**
+     * Returns the resident set size of the process
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The RSS in bytes
+     */
+    public long getRss() {
+        return this.rss;
+    }
+
+    /**
+     * Returns the number of threads in the process
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The thread count
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cpu=%.2f rss=%dM threads=%d", this.cpuLoad, this.rss >> 20, this.threads);
+    }
+
+}
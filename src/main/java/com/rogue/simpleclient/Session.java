@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.util.UUID;
+
+/**
+ * An authenticated session: the access token issued by the authentication
+ * server, the client token it was issued to, and the selected game profile
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class Session {
+
+    /** The access token */
+    private final String accessToken;
+    /** The client token the access token was issued to */
+    private final String clientToken;
+    /** The id of the selected profile, or {@code null} */
+    private final UUID profileId;
+    /** The name of the selected profile, or {@code null} */
+    private final String profileName;
+
+    /**
+     * Constructs a new {@link Session}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param accessToken The access token
+     * @param clientToken The client token the access token was issued to
+     * @param profileId The id of the selected profile, or {@code null}
+     * @param profileName The name of the selected profile, or {@code null}
+     */
+    public Session(String accessToken, String clientToken, UUID profileId, String profileName) {
+        this.accessToken = accessToken;
+        this.clientToken = clientToken;
+        this.profileId = profileId;
+        this.profileName = profileName;
+    }
+
+    /**
+     * Returns the access token
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The access token
+     */
+    public String getAccessToken() {
+        return this.accessToken;
+    }
+
+    /**
+     * Returns the client token the access token was issued to
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The client token
+     */
+    public String getClientToken() {
+        return this.clientToken;
+    }
+
+    /**
+     * Returns the id of the selected game profile
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The profile id, or {@code null} if the account has no profile
+     */
+    public UUID getProfileId() {
+        return this.profileId;
+    }
+
+    /**
+     * Returns the name of the selected game profile
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The profile name, or {@code null} if the account has no
+     *         profile
+     */
+    public String getProfileName() {
+        return this.profileName;
+    }
+
+    /**
+     * Returns whether the session has a selected game profile to launch as
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return {@code true} if a profile is selected
+     */
+    public boolean hasProfile() {
+        return this.profileId != null && this.profileName != null;
+    }
+
+    /**
+     * Parses a profile id, which the authentication server sends without
+     * dashes
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param id The id, with or without dashes
+     * @return The {@link UUID}
+     * @throws IllegalArgumentException If the id is not a valid UUID
+     */
+    public static UUID parseId(String id) {
+        if (id.length() != 32 || id.indexOf('-') >= 0) {
+            return UUID.fromString(id);
+        }
+        try {
+            return new UUID(Long.parseUnsignedLong(id.substring(0, 16), 16), Long.parseUnsignedLong(id.substring(16), 16));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid profile id: " + id, ex);
+        }
+    }
+
+    /**
+     * Formats a profile id the way the authentication server does, without
+     * dashes
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param id The {@link UUID}
+     * @return The id as 32 hex digits
+     */
+    public static String formatId(UUID id) {
+        return id.toString().replace("-", "");
+    }
+
+    @Override
+    public String toString() {
+        return "Session{profile=" + this.profileName + ", id=" + this.profileId + "}";
+    }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * An on-disk cache of authenticated sessions, keyed by account name. The store
+ * also owns the client token used for every request made against it, so that
+ * cached access tokens remain valid for validation and refreshing across
+ * launcher restarts.
+ * <br /><br />
+ * All reads and writes are guarded by an exclusive lock on a sibling
+ * {@code .lock} file, and writes are done by atomically replacing the store
+ * file, so multiple launcher processes may share a single store safely.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class SessionStore {
+
+    /** In-process monitors, since {@link FileLock} is held per-JVM */
+    private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<>();
+    /** The file holding the stored sessions */
+    private final File file;
+    /** The file used for inter-process locking */
+    private final File lockFile;
+    /** The in-process monitor for this store's file */
+    private final Object monitor;
+    /** The client token, cached after the first read */
+    private volatile String clientToken;
+
+    /**
+     * Constructs a new {@link SessionStore} backed by the supplied file. The
+     * file does not need to exist yet.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param file The file to store sessions in
+     */
+    public SessionStore(File file) {
+        this.file = file.getAbsoluteFile();
+        this.lockFile = new File(this.file.getPath() + ".lock");
+        this.monitor = SessionStore.monitorFor(this.file);
+    }
+
+    /**
+     * Returns the stable client token for this store, generating and
+     * persisting one if none exists yet
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The client token to authenticate with
+     * @throws IOException Failure to read or write the store
+     */
+    @SuppressWarnings("unchecked")
+    public String getClientToken() throws IOException {
+        String token = this.clientToken;
+        if (token == null) {
+            token = this.transact(true, root -> {
+                String stored = (String) root.get("clientToken");
+                if (stored == null) {
+                    stored = UUID.randomUUID().toString();
+                    root.put("clientToken", stored);
+                }
+                return stored;
+            });
+            this.clientToken = token;
+        }
+        return token;
+    }
+
+    /**
+     * Returns the cached session for an account, or {@code null} if there is
+     * no session stored for it
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param account The username/email of the account
+     * @return The stored {@link Session}, or {@code null}
+     * @throws IOException Failure to read the store
+     */
+    public Session get(String account) throws IOException {
+        String key = SessionStore.key(account);
+        return this.transact(false, root -> {
+            Object accounts = root.get("accounts");
+            return accounts instanceof JSONObject ? SessionStore.session(((JSONObject) accounts).get(key)) : null;
+        });
+    }
+
+    /**
+     * Stores a session for an account, replacing any previous session
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param account The username/email of the account
+     * @param session The {@link Session} to store
+     * @throws IOException Failure to write the store
+     */
+    @SuppressWarnings("unchecked")
+    public void put(String account, Session session) throws IOException {
+        String key = SessionStore.key(account);
+        JSONObject stored = SessionStore.json(session);
+        this.transact(true, root -> {
+            SessionStore.accounts(root).put(key, stored);
+            return null;
+        });
+    }
+
+    /**
+     * Removes the session for an account, if any
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param account The username/email of the account
+     * @throws IOException Failure to write the store
+     */
+    public void remove(String account) throws IOException {
+        String key = SessionStore.key(account);
+        this.transact(true, root -> {
+            SessionStore.accounts(root).remove(key);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the file this store persists to
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The backing file
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Runs a transaction against the store contents while holding both the
+     * in-process monitor and the inter-process file lock
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param <T> The transaction's return type
+     * @param write Whether the (possibly modified) contents should be saved
+     * @param tx The transaction to run
+     * @return The transaction's result
+     * @throws IOException Failure to read or write the store
+     */
+    @SuppressWarnings("try")
+    private <T> T transact(boolean write, Transaction<T> tx) throws IOException {
+        synchronized (this.monitor) {
+            File parent = this.file.getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(this.lockFile, "rw");
+                    FileChannel channel = raf.getChannel();
+                    FileLock lock = channel.lock()) {
+                JSONObject root = this.read();
+                T back = tx.apply(root);
+                if (write) {
+                    this.write(root);
+                }
+                return back;
+            }
+        }
+    }
+
+    /**
+     * Reads the store contents. A missing or unreadable store is treated as
+     * empty, as it only ever holds data that can be re-acquired.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The store contents
+     * @throws IOException Failure to read the file
+     */
+    private JSONObject read() throws IOException {
+        if (!this.file.isFile()) {
+            return new JSONObject();
+        }
+        try (Reader r = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+            Object o = new JSONParser().parse(r);
+            return o instanceof JSONObject ? (JSONObject) o : new JSONObject();
+        } catch (ParseException ex) {
+            System.err.println("Discarding corrupt session store: " + this.file);
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * Atomically replaces the store contents
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param root The new store contents
+     * @throws IOException Failure to write the file
+     */
+    private void write(JSONObject root) throws IOException {
+        Path target = this.file.toPath();
+        Path tmp = Files.createTempFile(target.getParent(), this.file.getName(), ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                root.writeJSONString(w);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject accounts(JSONObject root) {
+        Object accounts = root.get("accounts");
+        if (!(accounts instanceof JSONObject)) {
+            accounts = new JSONObject();
+            root.put("accounts", accounts);
+        }
+        return (JSONObject) accounts;
+    }
+
+    /**
+     * Reads a stored session, in the layout the authentication server uses
+     *
+     * @param stored The stored value
+     * @return The {@link Session}, or {@code null} if the value is not a
+     *         usable session
+     */
+    private static Session session(Object stored) {
+        if (!(stored instanceof JSONObject)) {
+            return null;
+        }
+        JSONObject obj = (JSONObject) stored;
+        Object access = obj.get("accessToken");
+        Object client = obj.get("clientToken");
+        if (!(access instanceof String) || !(client instanceof String)) {
+            return null;
+        }
+        UUID id = null;
+        String name = null;
+        Object prof = obj.get("selectedProfile");
+        if (prof instanceof JSONObject && ((JSONObject) prof).get("id") instanceof String) {
+            try {
+                id = Session.parseId((String) ((JSONObject) prof).get("id"));
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+            Object n = ((JSONObject) prof).get("name");
+            name = n instanceof String ? (String) n : null;
+        }
+        return new Session((String) access, (String) client, id, name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject json(Session session) {
+        JSONObject back = new JSONObject();
+        back.put("accessToken", session.getAccessToken());
+        back.put("clientToken", session.getClientToken());
+        if (session.getProfileId() != null) {
+            JSONObject prof = new JSONObject();
+            prof.put("id", Session.formatId(session.getProfileId()));
+            prof.put("name", session.getProfileName());
+            back.put("selectedProfile", prof);
+        }
+        return back;
+    }
+
+    private static String key(String account) {
+        return account.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Object monitorFor(File file) {
+        Object mon = new Object();
+        Object old = MONITORS.putIfAbsent(file.getPath(), mon);
+        return old == null ? mon : old;
+    }
+
+    /**
+     * A unit of work run against the store contents
+     *
+     * @param <T> The result type
+     */
+    @FunctionalInterface
+    private static interface Transaction<T> {
+
+        public T apply(JSONObject root) throws IOException;
+
+    }
+
+}
@@ -16,25 +16,17 @@
  */
 package com.rogue.simpleclient;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Scanner;
-import java.util.Set;
 import java.util.UUID;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
 
 /**
  * A simple class for launching authenticated Minecraft clients
@@ -47,10 +39,13 @@ import org.json.simple.JSONValue;
  */
 public final class SimpleClient {
 
+    /** The line printed by a client once it reaches the main menu */
+    public static final Pattern DEFAULT_READY_MARKER = Pattern.compile("Sound engine started");
+
     /** The minecraft version to launch */
     private final String version;
-    /** The url for Mojang's authentication server */
-    private final URL url;
+    /** The client used to authenticate with Mojang */
+    private final AuthClient auth;
     /** The application data folder that contains minecraft */
     private final File appData;
     /** The minecraft directory */
@@ -59,10 +54,36 @@ public final class SimpleClient {
     private final File gameDir;
     /** The natives folder for the version in use */
     private final File natives;
-    /** Random client UUID used for two-factor client auth */
-    private final UUID uuid = UUID.randomUUID();
-    /** The response payload from the authentication server */
-    private JSONObject response;
+    /** The authenticated session, or {@code null} when offline */
+    private Session session;
+    /** The launcher that client processes are started on */
+    private Launcher launcher = Launcher.getDefault();
+    /** The pump that drains client output */
+    private OutputPump outputPump = OutputPump.getDefault();
+    /** The sinks that client output is passed to */
+    private List<LogSink> logSinks = Collections.singletonList(LogSink.console());
+    /** The number of output lines kept in memory per client */
+    private int logLines = 500;
+    /** Whether the classpath is verified before each launch */
+    private boolean verifyLibraries = true;
+    /** Whether natives are extracted before each launch */
+    private boolean extractNatives = true;
+    /** Verifies assets before each launch, or {@code null} to skip */
+    private AssetManager assets;
+    /** Whether clients share a trained class-data archive */
+    private boolean classDataSharing = false;
+    /** Chooses JVM flags for each client, or {@code null} for JVM defaults */
+    private TuningProfile tuning;
+    /** Where launch timings and counters are recorded */
+    private LaunchMetrics metrics = LaunchMetrics.getDefault();
+    /** Marks a client as ready in its output, or {@code null} to not time it */
+    private Pattern readyMarker = SimpleClient.DEFAULT_READY_MARKER;
+    /** Hands launches a JVM started ahead of time, or {@code null} */
+    private WarmPool warmPool;
+    /** The shared store libraries are linked into, or {@code null} */
+    private LibraryStore libraryStore;
+    /** Whether clients are launched from a single merged classpath jar */
+    private boolean mergeClasspath = false;
 
     /**
      * Constructs and authenticates a new client instance. Will ask for input
@@ -75,7 +96,6 @@ public final class SimpleClient {
      * @throws IOException Any type of communications failure with Mojang
      */
     public SimpleClient(Scanner input) throws IOException {
-        this.url = new URL("https://authserver.mojang.com/authenticate");
         System.out.print("What version are you launching (e.g. '1.7.9')?: ");
         this.version = input.nextLine();
         System.out.print("What is the full path for your application data folder containing minecraft?: ");
@@ -85,6 +105,7 @@ public final class SimpleClient {
         this.gameDir = new File(minecraftDir, "versions" + File.separator
                 + this.version + File.separatorChar);
         this.natives = new File(gameDir, "natives" + File.separatorChar);
+        this.auth = SimpleClient.defaultAuth(this.minecraftDir);
         System.out.print("Username: ");
         String username = input.nextLine();
         System.out.print("Password: ");
@@ -104,7 +125,26 @@ public final class SimpleClient {
      * @throws IOException Any type of communications failure with Mojang
      */
     public SimpleClient(String version, String username, String password, File appData) throws IOException {
-        this(version, appData);
+        this(version, username, password, appData, null);
+    }
+
+    /**
+     * Constructs and authenticates a new client instance against the supplied
+     * authentication client.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version to use
+     * @param username The username/email to authenticate with
+     * @param password The password to authenticate with
+     * @param appData The location of the application data folder containing MC
+     * @param auth The {@link AuthClient} to use, or {@code null} for the
+     *             default Mojang server with a session cache in .minecraft
+     * @throws IOException Any type of communications failure with Mojang
+     */
+    public SimpleClient(String version, String username, String password, File appData, AuthClient auth) throws IOException {
+        this(version, appData, auth);
         this.connect(username, password);
     }
 
@@ -118,14 +158,21 @@ public final class SimpleClient {
      * @param appData The location of the application data folder containing MC
      */
     public SimpleClient(String version, File appData) {
-        URL url;
-        try {
-            url = new URL("https://authserver.mojang.com/authenticate");
-        } catch (MalformedURLException ex) {
-            System.err.println("Bad authentication URL used!");
-            url = null;
-        }
-        this.url = url;
+        this(version, appData, null);
+    }
+
+    /**
+     * Constructs a new, unauthentication client instance.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version to use
+     * @param appData The location of the application data folder containing MC
+     * @param auth The {@link AuthClient} to use, or {@code null} for the
+     *             default Mojang server with a session cache in .minecraft
+     */
+    public SimpleClient(String version, File appData, AuthClient auth) {
         this.version = version;
         this.appData = appData;
         this.minecraftDir = new File(this.appData.getAbsoluteFile(),
@@ -133,63 +180,48 @@ public final class SimpleClient {
         this.gameDir = new File(minecraftDir, "versions" + File.separator
                 + this.version + File.separatorChar);
         this.natives = new File(gameDir, "natives" + File.separatorChar);
+        this.auth = auth != null ? auth : SimpleClient.defaultAuth(this.minecraftDir);
     }
 
     /**
-     * Connects to and authenticates with the Mojang auth server
+     * Creates an {@link AuthClient} for Mojang's authentication server, with
+     * sessions cached inside of the supplied minecraft directory
      *
-     * @since 1.0.0
-     * @version 1.0.0
+     * @since 1.1.0
+     * @version 1.1.0
      *
-     * @param username The username/email to use
-     * @param password The password to use
-     * @throws IOException Incorrect credentials or some other connection error
+     * @param minecraftDir The minecraft directory
+     * @return The default {@link AuthClient}, or {@code null} on a bad url
      */
-    private void connect(String username, String password) throws IOException {
-        HttpURLConnection http = (HttpURLConnection) this.url.openConnection();
-        http.setRequestMethod("POST");
-        http.setRequestProperty("Content-Type", "application/json");
-        http.setUseCaches(false);
-        http.setDoOutput(true);
-        try (DataOutputStream wr = new DataOutputStream(http.getOutputStream())) {
-            wr.writeBytes(this.getPayload(username, password).toJSONString());
-            wr.flush();
-        }
-        StringBuilder sb = new StringBuilder();
-        try (InputStreamReader is = new InputStreamReader(http.getInputStream());
-                BufferedReader br = new BufferedReader(is)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line);
-            }
+    private static AuthClient defaultAuth(File minecraftDir) {
+        try {
+            return new AuthClient(new URL(AuthClient.MOJANG_AUTH_SERVER),
+                    new SessionStore(new File(minecraftDir, "simpleclient_sessions.json")));
+        } catch (MalformedURLException ex) {
+            System.err.println("Bad authentication URL used!");
+            return null;
         }
-        this.response = (JSONObject) JSONValue.parse(sb.toString());
     }
 
     /**
-     * Constructs the JSON payload to send to Mojang's authentication server
+     * Connects to and authenticates with the Mojang auth server, reusing a
+     * cached session for the account where possible
      *
      * @since 1.0.0
-     * @version 1.0.0
+     * @version 1.1.0
      *
-     * @param username The username to use
+     * @param username The username/email to use
      * @param password The password to use
-     * @return A JSON payload for deployment to a webserver
+     * @throws IOException Incorrect credentials or some other connection error
      */
-    private JSONObject getPayload(String username, String password) {
-        JSONObject back = new JSONObject();
-        JSONObject client = new JSONObject();
-        client.put("name", "Minecraft");
-        client.put("version", 1);
-        back.put("agent", client);
-        back.put("username", username);
-        back.put("password", password);
-        back.put("clientToken", this.uuid.toString());
-        return back;
+    private void connect(String username, String password) throws IOException {
+        long began = System.nanoTime();
+        this.session = this.auth.login(username, password);
+        this.lap(LaunchMetrics.Phase.CONNECT, began);
     }
 
     /**
-     * Opens the minecraft client.
+     * Opens the minecraft client, blocking until it exits.
      *
      * @since 1.0.0
      * @version 1.0.0
@@ -198,269 +230,510 @@ public final class SimpleClient {
      * @throws IOException Unobserved I/O Error
      */
     public void openMinecraft() throws SecurityException, IOException {
-        JSONObject prof = (JSONObject) this.response.get("selectedProfile");
-        this.openMinecraft(UUID.fromString((String) prof.get("id")), (String) prof.get("name"));
+        Session profile = this.profile();
+        this.openMinecraft(profile.getProfileId(), profile.getProfileName());
     }
 
     /**
-     * Opens the minecraft client. If the client was not initialized with
-     * credentials, then the values passed to this will be used for an
-     * offline-mode client.
+     * Opens the minecraft client, blocking until it exits. If the client was
+     * not initialized with credentials, then the values passed to this will be
+     * used for an offline-mode client.
      * 
      * @since 1.0.0
-     * @version 1.0.0
+     * @version 1.1.0
      * 
      * @param user The {@link UUID} of the user to authenticate as
      * @param name The in-game name to use
      */
     public void openMinecraft(UUID user, String name) {
-        MCProc mc = new MCProc(this.natives, this.minecraftDir, this.gameDir, this.version);
-        mc.appendTag("username", name, " ");
-        mc.appendTag("uuid", user.toString(), " ");
-        mc.appendTag("version", this.version, " ");
-        mc.appendTag("gameDir", this.minecraftDir.getAbsolutePath(), " ");
-        mc.appendTag("assetsDir", new File(this.minecraftDir, "assets").getAbsolutePath(), " ");
-        mc.appendTag("userProperties", "{}", " ");
-        if (this.response != null) {
-            mc.appendTag("accessToken", (String) this.response.get("accessToken"), " ");
-        }
         try {
-            ProcessBuilder pb = new ProcessBuilder();
-            pb.redirectErrorStream(true);
-            System.out.println(mc.getReadableExec());
-            System.out.println(mc.getExec());
-            pb.command(mc.getExec());
-            Process p = Runtime.getRuntime().exec(mc.getExec());
-            p.waitFor();
-            try (BufferedReader bf = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
-                String line;
-                while ((line = bf.readLine()) != null) {
-                    System.out.println(line);
-                }
-            }
+            this.launch(user, name).get();
         } catch (Exception ex) {
             ex.printStackTrace();
         }
     }
 
     /**
-     * Helper class holding information about the execution process of the
-     * Minecraft client.
+     * Queues the minecraft client for launching on this instance's
+     * {@link Launcher}, using the authenticated profile.
      *
-     * @since 1.0.0
-     * @author 1Rogue
-     * @version 1.0.0
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return A {@link LaunchHandle} for the client instance
+     * @throws IOException Failure to resolve the version to launch, or no
+     *                     authenticated profile to launch as
      */
-    private static class MCProc {
-
-        /** Whether or not to print to console */
-        private final boolean output = false;
-        /** The raw, unfiltered executable statement */
-        private String exec = "java -Djava.library.path=%NATIVES% "
-                + "-cp %LIBS%%GAMEDIR%" + File.separator + "%VERSION%.jar "
-                + "net.minecraft.client.main.Main";
-
-        /**
-         * {@link MCProc} constructor
-         * 
-         * @since 1.0.0
-         * @version 1.0.0
-         * 
-         * @param natives The natives folder location
-         * @param mcdir Minecraft main folder location
-         * @param gamedir The version directory
-         * @param version The version of minecraft to use
-         */
-        public MCProc(File natives, File mcdir, File gamedir, String version) {
-            this.out("exec: " + this.exec);
-            this.exec = this.exec.replaceAll("\\%LIBS\\%",
-                    Matcher.quoteReplacement(Library.getLibraryString(version)));
-            this.out("exec: " + this.exec);
-            this.exec = this.exec.replaceAll("\\%NATIVES\\%",
-                    Matcher.quoteReplacement(natives.getAbsolutePath()));
-            this.out("exec: " + this.exec);
-            this.exec = this.exec.replaceAll("\\%GAMEDIR\\%",
-                    Matcher.quoteReplacement(gamedir.getAbsolutePath()));
-            this.out("exec: " + this.exec);
-            this.exec = this.exec.replaceAll("\\%MCDIR\\%",
-                    Matcher.quoteReplacement(mcdir.getAbsolutePath()));
-            this.out("exec: " + this.exec);
-            this.exec = this.exec.replaceAll("\\%VERSION\\%",
-                    Matcher.quoteReplacement(version));
-            this.out("exec: " + this.exec);
-        }
-
-        /**
-         * Appends a varargs argument for the minecraft client
-         * 
-         * @since 1.0.0
-         * @version 1.0.0
-         * 
-         * @param tag The tag key
-         * @param value The tag value
-         * @param delimiter Inbetween spacing, since some arguments differ
-         */
-        public void appendTag(String tag, String value, String delimiter) {
-            this.exec += " --" + tag + delimiter + value;
-        }
+    public LaunchHandle launch() throws IOException {
+        Session profile = this.profile();
+        return this.launch(profile.getProfileId(), profile.getProfileName());
+    }
 
-        /**
-         * Returns an executable statement for {@link Runtime#exec(java.lang.String)}
-         * 
-         * @since 1.0.0
-         * @version 1.0.0
-         * 
-         * @return A string representing an executable command for minecraft
-         */
-        public String getExec() {
-            return this.exec;
-        }
+    /**
+     * Returns the authenticated session
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The {@link Session}, or {@code null} if the client was not
+     *         initialized with credentials
+     */
+    public Session getSession() {
+        return this.session;
+    }
 
-        /**
-         * Returns a human-readable form of the executable command, new-line
-         * delimited by a carat for use on a windows command-line environment
-         * 
-         * @since 1.0.0
-         * @version 1.0.0
-         * 
-         * @return A readable executable statement
-         */
-        public String getReadableExec() {
-            return this.getExec().replaceAll(Pattern.quote(";"), ";^\n");
+    /**
+     * Returns the session to launch as, if it has a game profile
+     *
+     * @return The authenticated {@link Session}
+     * @throws IOException If there is no session or it has no profile
+     */
+    private Session profile() throws IOException {
+        if (this.session == null) {
+            throw new IOException("Not logged in; pass a user and name to launch offline");
         }
-
-        /**
-         * Prints out a string to stdout. Can be disabled
-         * 
-         * @since 1.0.0
-         * @version 1.0.0
-         * 
-         * @param out The string to print
-         */
-        private void out(String out) {
-            if (this.output) {
-                System.out.println(out);
-            }
+        if (!this.session.hasProfile()) {
+            throw new IOException("The account has no game profile to launch as");
         }
+        return this.session;
+    }
 
+    /**
+     * Queues the minecraft client for launching on this instance's
+     * {@link Launcher}. If the client was not initialized with credentials,
+     * then the values passed to this will be used for an offline-mode client.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param user The {@link UUID} of the user to authenticate as
+     * @param name The in-game name to use
+     * @return A {@link LaunchHandle} for the client instance
+     * @throws IOException Failure to resolve the version to launch
+     * @throws VerificationException If a library is missing or corrupt
+     */
+    public LaunchHandle launch(UUID user, String name) throws IOException {
+        return this.launch(user, name, Collections.<String>emptyList());
     }
 
-    private static enum Library {
-        APACHE_COMMONS_3("org\\apache\\commons\\commons-lang3\\%s\\commons-lang3-%s", map("1.7.9", "3.1"), map("1.8.3", "3.3.2")),
-        APACHE_COMMONS_COMPRESS("org\\apache\\commons\\commons-compress\\%s\\commons-compress-%s", map("1.8.3", "1.8.1")),
-        ARGO("argo\\argo\\%s\\argo-%s", map("1.7.9", "2.25_fixed")),
-        AUTHLIB("com\\mojang\\authlib\\%s\\authlib-%s", map("1.7.9", "1.5.13"), map("1.8.3", "1.5.17")),
-        CODEC_JORBIS("com\\paulscode\\codecjorbis\\%s\\codecjorbis-%s", map("1.7.9", "20101023"), map("1.8.3", "20101023")),
-        CODEC_WAV("com\\paulscode\\codecwav\\%s\\codecwav-%s", map("1.7.9", "20101023"), map("1.8.3", "20101023")),
-        CODEC_COMMONS("commons-codec\\commons-codec\\%s\\commons-codec-%s", map("1.7.9", "1.9"), map("1.8.3", "1.9")),
-        GSON("com\\google\\code\\gson\\gson\\%s\\gson-%s", map("1.7.9", "2.2.4"), map("1.8.3", "2.2.4")),
-        GUAVA("com\\google\\guava\\guava\\%s\\guava-%s", map("1.7.9", "15.0"), map("1.8.3", "17.0")),
-        HTTP_CORE("org\\apache\\httpcomponents\\httpcore\\%s\\httpcore-%s", map("1.8.3", "4.3.2")),
-        HTTP_CLIENT("org\\apache\\httpcomponents\\httpclient\\%s\\httpclient-%s", map("1.8.3", "4.3.3")),
-        ICU4J("com\\ibm\\icu\\icu4j-core-mojang\\%s\\icu4j-core-mojang-51.2", map("1.7.9", "51.2"), map("1.8.3", "51.2")),
-        IO_COMMONS("commons-io\\commons-io\\%s\\commons-io-%s", map("1.7.9", "2.4"), map("1.8.3", "2.4")),
-        JINPUT("net\\java\\jinput\\jinput\\%s\\jinput-%s", map("1.7.9", "2.0.5"), map("1.8.3", "2.0.5")),
-        JINPUT_PLATFORM("net\\java\\jinput\\jinput-platform\\%s\\jinput-platform-%s-natives-windows", map("1.7.9", "2.0.5"), map("1.8.3", "2.0.5")),
-        JNA("net\\java\\dev\\jna\\jna\\%s\\jna-%s", map("1.8.3", "3.4.0")),
-        JNA_PLATFORM("net\\java\\dev\\jna\\platform\\%s\\platform-%s", map("1.8.3", "3.4.0")),
-        JOPT_SIMPLE("net\\sf\\jopt-simple\\jopt-simple\\%s\\jopt-simple-%s", map("1.7.9", "4.5"), map("1.8.3", "4.6")),
-        JUTILS("net\\java\\jutils\\jutils\\%s\\jutils-%s", map("1.7.9", "1.0.0"), map("1.8.3", "1.0.0")),
-        LIBRARY_JAVASOUND("libraries\\com\\paulscode\\libraryjavasound\\%s\\libraryjavasound-%s", map("1.7.9", "20101123"), map("1.8.3", "20101123")),
-        LIBRARY_LWJGL_OPENAL("com\\paulscode\\librarylwjglopenal\\%s\\librarylwjglopenal-%s", map("1.7.9", "20100824"), map("1.8.3", "20100824")),
-        LOG4J_API("org\\apache\\logging\\log4j\\log4j-api\\%s\\log4j-api-%s", map("1.7.9", "2.0-beta9"), map("1.8.3", "2.0-beta9")),
-        LOG4J_CORE("org\\apache\\logging\\log4j\\log4j-core\\%s\\log4j-core-%s", map("1.7.9", "2.0-beta9"), map("1.8.3", "2.0-beta9")),
-        LOGGING_COMMONS("commons-logging\\commons-logging\\%s\\commons-logging-%s", map("1.8.3", "1.1.3")),
-        LWJGL("libraries\\org\\lwjgl\\lwjgl\\lwjgl\\%s\\lwjgl-%s", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
-        LWJGL_UTIL("org\\lwjgl\\lwjgl\\lwjgl_util\\%s\\lwjgl_util-%s", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
-        LWJGL_PLATFORM("org\\lwjgl\\lwjgl\\lwjgl-platform\\%s\\lwjgl-platform-%s-natives-windows", map("1.7.9", "2.9.1"), map("1.8.3", "2.9.4-nightly-20150209")),
-        NETTY_ALL("io\\netty\\netty-all\\%s\\netty-all-%s", map("1.7.9", "4.0.10.Final"), map("1.8.3", "4.0.23.Final")),
-        OSHI("oshi-project\\oshi-core\\%s\\oshi-core-%s", map("1.8.3", "1.1")),
-        REALMS("com\\mojang\\realms\\%s\\realms-%s", map("1.8.3", "1.7.13")),
-        SOUND_SYSTEM("com\\paulscode\\soundsystem\\%s\\soundsystem-%s", map("1.7.9", "20120107"), map("1.8.3", "20120107")),
-        TROVE4J("net\\sf\\trove4j\\trove4j\\%s\\trove4j-%s", map("1.7.9", "3.0.3")),
-        TWITCH("tv\\twitch\\twitch\\%s\\twitch-%s", map("1.7.9", "5.16"), map("1.8.3", "6.5")),
-        TWITCH_PLATFORM("tv\\twitch\\twitch-platform\\%s\\twitch-%s-natives-windows-" + arch(), map("1.7.9", "5.16"), map("1.8.3", "6.5")),
-        TWITCH_EXTERNAL_PLATFORM("tv\\twitch\\twitch-external-platform\\%s\\twitch-%s-natives-windows-" + arch(), map("1.7.9", "5.16"), map("1.8.3", "6.5")),
-        VECTOR_MATH("java3d\\vecmath\\%s\\vecmath-%s", map("1.7.9", "1.3.1")),
-        ;
-
-        private final String format;
-        private final Map<String, String> vers;
-
-        @SafeVarargs
-        private Library(String format, Mapping<String, String>... vers) {
-            this.format = "%%MCDIR%%" + File.separator + "libraries" + File.separator + format.replace("\\", File.separator) + ".jar;";
-            this.vers = new HashMap<>(vers.length);
-            for (Mapping<String, String> val : vers) {
-                this.vers.put(val.getKey(), val.getValue());
+    /**
+     * Queues the minecraft client for launching on this instance's
+     * {@link Launcher}, with JVM flags that replace those of the
+     * {@link TuningProfile} for this launch only
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param user The {@link UUID} of the user to authenticate as
+     * @param name The in-game name to use
+     * @param overrides JVM flags overriding the tuning profile, e.g.
+     *                  {@code -Xmx3G}
+     * @return A {@link LaunchHandle} for the client instance
+     * @throws IOException Failure to resolve the version to launch
+     * @throws VerificationException If a library is missing or corrupt
+     */
+    public LaunchHandle launch(UUID user, String name, List<String> overrides) throws IOException {
+        LaunchMetrics metrics = this.metrics;
+        long began = System.nanoTime();
+        LaunchPlan plan;
+        List<String> command;
+        List<String> flags;
+        List<String> pooled = null;
+        List<String> game = null;
+        ClassDataSharing.Use cds = null;
+        try {
+            LaunchPlan resolved = LaunchPlan.of(this.version, this.appData);
+            long mark = this.lap(LaunchMetrics.Phase.PLAN, began);
+            PlanCache plans = PlanCache.forDirectory(resolved.getMinecraftDir());
+            if (this.verifyLibraries) {
+                plans.verifyOnce(resolved, () -> LibraryVerifier.forDirectory(resolved.getMinecraftDir()).verify(resolved));
+                mark = this.lap(LaunchMetrics.Phase.VERIFY, mark);
             }
-        }
-
-        public Map<String, String> getLibraryVersionMappings() {
-            return Collections.unmodifiableMap(this.vers);
-        }
-        
-        public static Set<String> getMappedVersions(String version) {
-            Set<String> back = new HashSet<>();
-            for (Library lib : Library.values()) {
-                if (lib.vers.containsKey(version)) {
-                    String repl = lib.vers.get(version);
-                    back.add(String.format(lib.format, repl, repl));
+            if (this.libraryStore != null) {
+                this.libraryStore.link(resolved);
+                mark = this.lap(LaunchMetrics.Phase.LINK, mark);
+            }
+            if (this.extractNatives) {
+                plans.extractOnce(resolved, () -> NativesExtractor.extract(resolved));
+                mark = this.lap(LaunchMetrics.Phase.NATIVES, mark);
+            }
+            if (this.assets != null) {
+                for (String problem : this.assets.verify(resolved).getProblems()) {
+                    System.err.println("Asset problem: " + problem);
                 }
+                mark = this.lap(LaunchMetrics.Phase.ASSETS, mark);
             }
-            return back;
+            plan = this.mergeClasspath ? ClasspathMerger.forDirectory(resolved.getMinecraftDir()).merge(resolved) : resolved;
+            if (this.mergeClasspath) {
+                mark = this.lap(LaunchMetrics.Phase.MERGE, mark);
+            }
+            cds = this.classDataSharing ? ClassDataSharing.forDirectory(plan.getMinecraftDir()).prepare(plan) : null;
+            flags = this.jvmFlags(cds, overrides);
+            String token = this.session == null ? null : this.session.getAccessToken();
+            command = plan.command(name, user, token, flags);
+            if (this.warmPool != null && (cds == null || !cds.isTraining())) {
+                game = plan.gameArguments(name, user, token);
+                pooled = this.warmFlags(cds, overrides);
+            }
+            this.lap(LaunchMetrics.Phase.COMMAND, mark);
+        } catch (IOException | RuntimeException ex) {
+            metrics.launchFailed();
+            throw ex;
+        }
+        ProcessBuilder pb = new ProcessBuilder(command);
+        LogBuffer log = new LogBuffer(this.logLines);
+        List<LogSink> sinks = new ArrayList<>(this.logSinks.size() + 2);
+        sinks.add(log);
+        sinks.addAll(this.logSinks);
+        OutputPump pump = this.outputPump;
+        String ver = this.version;
+        Pattern marker = this.readyMarker;
+        Launcher.Spawner spawner = pb::start;
+        if (game != null) {
+            WarmPool pool = this.warmPool;
+            List<String> args = game;
+            List<String> warm = pooled;
+            spawner = () -> {
+                Process p = pool.take(plan, warm, args);
+                return p != null ? p : pb.start();
+            };
         }
-        
-        public static String getLibraryString(String version) {
-            StringBuilder sb = new StringBuilder();
-            Library.getMappedVersions(version).forEach(sb::append);
-            return sb.toString();
+        LaunchHandle handle = this.launcher.launch(name, spawner, h -> {
+            metrics.launched();
+            metrics.record(ver, LaunchMetrics.Phase.QUEUE, h.getQueueNanos());
+            metrics.record(ver, LaunchMetrics.Phase.SPAWN, h.getSpawnNanos());
+            if (marker != null) {
+                sinks.add(metrics.readyProbe(ver, marker, began, h.getStartedAt()));
+            }
+            pump.attach(h.getName(), h.getProcess(), sinks);
+        });
+        handle.setLog(log);
+        handle.onFailure(ex -> metrics.launchFailed());
+        if (cds != null && cds.isTraining()) {
+            handle.whenDone(cds::finish);
         }
+        return handle;
+    }
 
-        private static Mapping<String, String> map(String key, String val) {
-            return new Mapping<>(key, val);
+    /**
+     * Starts pooled JVMs for this client's version ahead of its first launch,
+     * with the flags pooled launches get. Does nothing without a
+     * {@link WarmPool}, or while a class-data archive is still to be trained.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @throws IOException Failure to resolve the version to launch
+     */
+    public void prewarm() throws IOException {
+        if (this.warmPool == null) {
+            return;
         }
-        
-        private static String arch() {
-            boolean mojangUsesJVMArch = true;
-            if (mojangUsesJVMArch) {
-                return System.getProperty("os.arch").endsWith("64") ? "64" : "32";
-            } else {
-                String arch = System.getenv("PROCESSOR_ARCHITECTURE");
-                String wow64Arch = System.getenv("PROCESSOR_ARCHITEW6432");
-                return arch.endsWith("64")
-                        || wow64Arch != null && wow64Arch.endsWith("64")
-                        ? "64" : "32";
-            }
+        LaunchPlan plan = LaunchPlan.of(this.version, this.appData);
+        if (this.mergeClasspath) {
+            plan = ClasspathMerger.forDirectory(plan.getMinecraftDir()).merge(plan);
+        }
+        ClassDataSharing.Use cds = this.classDataSharing
+                ? ClassDataSharing.forDirectory(plan.getMinecraftDir()).prepare(plan) : null;
+        if (cds == null || !cds.isTraining()) {
+            this.warmPool.prepare(plan, this.warmFlags(cds, Collections.<String>emptyList()));
         }
     }
 
-    private static class Mapping<K, V> implements Map.Entry<K, V> {
-        
-        private final K key;
-        private V value;
+    /**
+     * Returns the JVM flags for the next launch: the tuning profile's flags
+     * for the clients on the launcher, the overrides, then any class-data
+     * sharing flags
+     *
+     * @param cds The class-data archive in use, or {@code null}
+     * @param overrides JVM flags overriding the tuning profile
+     * @return A new, modifiable list of flags
+     */
+    private List<String> jvmFlags(ClassDataSharing.Use cds, List<String> overrides) {
+        return this.flags(this.launcher.getRunning() + this.launcher.getQueued() + 1, cds, overrides);
+    }
 
-        public Mapping(K key, V value) {
-            this.key = key;
-            this.value = value;
-        }
+    /**
+     * Returns the JVM flags for launches handed a pooled JVM. They must not
+     * change with the launcher's load, or every load level would need JVMs
+     * of its own, so the tuning profile sizes them for the launcher's limit
+     * of running clients, or for a full pool when there is no limit.
+     *
+     * @param cds The class-data archive in use, or {@code null}
+     * @param overrides JVM flags overriding the tuning profile
+     * @return A new, modifiable list of flags
+     */
+    private List<String> warmFlags(ClassDataSharing.Use cds, List<String> overrides) {
+        int max = this.launcher.getMaxRunning();
+        return this.flags(max == Integer.MAX_VALUE ? this.warmPool.getSize() : max, cds, overrides);
+    }
 
-        @Override
-        public K getKey() {
-            return this.key;
+    /**
+     * Returns the tuning profile's flags for a number of clients, the
+     * overrides, then any class-data sharing flags
+     */
+    private List<String> flags(int instances, ClassDataSharing.Use cds, List<String> overrides) {
+        List<String> jvm = this.tuning == null ? new ArrayList<>() : this.tuning.flags(instances);
+        jvm = TuningProfile.merge(jvm, overrides);
+        if (cds != null) {
+            jvm.addAll(cds.getFlags());
         }
+        return jvm;
+    }
 
-        @Override
-        public V getValue() {
-            return this.value;
-        }
+    /**
+     * Records the time since a mark as a phase of this client's version
+     *
+     * @param phase The {@link LaunchMetrics.Phase} that ended
+     * @param since When the phase began, from {@link System#nanoTime()}
+     * @return The current {@link System#nanoTime()}, marking the next phase
+     */
+    private long lap(LaunchMetrics.Phase phase, long since) {
+        long now = System.nanoTime();
+        this.metrics.record(this.version, phase, now - since);
+        return now;
+    }
 
-        @Override
-        public V setValue(V value) {
-            V old = this.value;
-            this.value = value;
-            return old;
-        }
+    /**
+     * Sets the sinks that client output is passed to, in addition to the
+     * in-memory tail available through {@link LaunchHandle#getLog()}. By
+     * default, output is printed to stdout.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param sinks The {@link LogSink LogSinks} to use
+     * @return This instance
+     */
+    public SimpleClient setLogSinks(LogSink... sinks) {
+        this.logSinks = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(sinks)));
+        return this;
+    }
+
+    /**
+     * Sets the number of output lines kept in memory per client
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param lines The number of lines to keep
+     * @return This instance
+     */
+    public SimpleClient setLogLines(int lines) {
+        this.logLines = lines;
+        return this;
+    }
+
+    /**
+     * Sets whether the classpath is checked for missing or corrupt jars
+     * before each launch. Enabled by default. A classpath that passed is not
+     * checked again until one of its jars changes; see {@link PlanCache}.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param verify {@code true} to verify libraries
+     * @return This instance
+     */
+    public SimpleClient setVerifyLibraries(boolean verify) {
+        this.verifyLibraries = verify;
+        return this;
+    }
+
+    /**
+     * Sets whether natives are extracted from the version's natives jars
+     * before each launch. Enabled by default; when disabled, the natives
+     * folder has to be populated by hand.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param extract {@code true} to extract natives
+     * @return This instance
+     */
+    public SimpleClient setExtractNatives(boolean extract) {
+        this.extractNatives = extract;
+        return this;
+    }
+
+    /**
+     * Sets the manager used to verify and repair assets before each launch.
+     * Disabled by default. Broken assets do not stop the client from
+     * starting, so any that cannot be repaired are only reported.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param assets The {@link AssetManager} to use, or {@code null} to skip
+     *               asset verification
+     * @return This instance
+     */
+    public SimpleClient setAssetManager(AssetManager assets) {
+        this.assets = assets;
+        return this;
+    }
+
+    /**
+     * Sets whether clients share a class-data archive. Disabled by default.
+     * When enabled, the first launch of a classpath is a training run whose
+     * loaded classes are archived when it exits; later launches map that
+     * archive instead of loading the classes from the library jars. Needs
+     * java 13 or newer, and is ignored otherwise.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param share {@code true} to use class-data sharing
+     * @return This instance
+     */
+    public SimpleClient setClassDataSharing(boolean share) {
+        this.classDataSharing = share;
+        return this;
+    }
+
+    /**
+     * Sets whether clients are launched from a single uncompressed jar
+     * holding the whole classpath, instead of every library jar. Disabled by
+     * default. The jar is built on the first launch of a classpath and
+     * rebuilt whenever a library changes; see {@link ClasspathMerger}.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param merge {@code true} to launch from a merged classpath
+     * @return This instance
+     */
+    public SimpleClient setMergeClasspath(boolean merge) {
+        this.mergeClasspath = merge;
+        return this;
+    }
+
+    /**
+     * Sets the profile that chooses heap, collector and thread flags for
+     * each client, based on the host and how many clients the
+     * {@link Launcher} is running. Disabled by default, leaving every client
+     * on JVM defaults.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param profile The {@link TuningProfile} to use, or {@code null} to
+     *                leave every client on JVM defaults
+     * @return This instance
+     */
+    public SimpleClient setTuningProfile(TuningProfile profile) {
+        this.tuning = profile;
+        return this;
+    }
+
+    /**
+     * Sets where launch timings and counters are recorded. By default they go
+     * to {@link LaunchMetrics#getDefault()}, which is also exposed over JMX.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param metrics The {@link LaunchMetrics} to use
+     * @return This instance
+     */
+    public SimpleClient setMetrics(LaunchMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Returns where launch timings and counters are recorded
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The {@link LaunchMetrics} in use
+     */
+    public LaunchMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the pattern that marks a client as ready when found in its output,
+     * ending the {@link LaunchMetrics.Phase#READY READY} and
+     * {@link LaunchMetrics.Phase#TOTAL TOTAL} timings.
+     * {@link #DEFAULT_READY_MARKER} by default.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param marker The ready marker, or {@code null} to not time readiness
+     * @return This instance
+     */
+    public SimpleClient setReadyMarker(Pattern marker) {
+        this.readyMarker = marker;
+        return this;
+    }
+
+    /**
+     * Sets the pool of JVMs started ahead of time that launches are handed.
+     * Disabled by default. A launch takes a pooled JVM when one is ready for
+     * its version and JVM flags, and starts cold otherwise; see
+     * {@link #prewarm()} to fill the pool before the first launch.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param pool The {@link WarmPool} to use, or {@code null} to always
+     *             start clients cold
+     * @return This instance
+     */
+    public SimpleClient setWarmPool(WarmPool pool) {
+        this.warmPool = pool;
+        return this;
+    }
+
+    /**
+     * Sets a store that the libraries of this client are linked into before
+     * each launch. Disabled by default. Clients of several minecraft
+     * directories that share a store also share one copy of each library,
+     * on disk and in the page cache.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param store The {@link LibraryStore} to use, or {@code null} to leave
+     *              libraries in place
+     * @return This instance
+     */
+    public SimpleClient setLibraryStore(LibraryStore store) {
+        this.libraryStore = store;
+        return this;
+    }
+
+    /**
+     * Sets the {@link OutputPump} that drains client output. By default, the
+     * shared {@link OutputPump#getDefault()} instance is used.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param pump The {@link OutputPump} to use
+     * @return This instance
+     */
+    public SimpleClient setOutputPump(OutputPump pump) {
+        this.outputPump = pump == null ? OutputPump.getDefault() : pump;
+        return this;
+    }
+
+    /**
+     * Sets the {@link Launcher} that clients are started on. By default, the
+     * shared {@link Launcher#getDefault()} instance is used.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param launcher The {@link Launcher} to use
+     * @return This instance
+     */
+    public SimpleClient setLauncher(Launcher launcher) {
+        this.launcher = launcher == null ? Launcher.getDefault() : launcher;
+        return this;
     }
 
 }
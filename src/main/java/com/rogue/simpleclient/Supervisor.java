@@ -0,0 +1,699 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches launched clients: samples each one's CPU time, resident memory and
+ * thread count from {@code /proc}, enforces memory and CPU limits, and
+ * restarts clients that crash with an exponential backoff. All supervisors
+ * sample on one shared thread, rather than a thread per client.
+ * <br /><br />
+ * Sampling needs Linux; elsewhere clients are still restarted, but no
+ * samples are taken and limits are not enforced. CPU time is read in clock
+ * ticks, assumed to be the usual 100 per second.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class Supervisor {
+
+    /** Samples the clients of every supervisor and schedules restarts */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(Launcher.daemon("SimpleClient-supervisor"));
+    /** Relaunches clients, which may block on planning and verification */
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(Launcher.daemon("SimpleClient-restart"));
+    /** Nanoseconds per clock tick of the {@code /proc} CPU times */
+    private static final long NANOS_PER_TICK = TimeUnit.SECONDS.toNanos(1) / 100;
+    /** {@code Process#pid()} on java 9 and newer, or {@code null} */
+    private static final Method PID = Supervisor.pidMethod();
+    /** The clients being supervised */
+    private final List<Instance> instances = new CopyOnWriteArrayList<>();
+    /** The periodic sampling task */
+    private final ScheduledFuture<?> sampler;
+    /** The number of samples kept per client */
+    private volatile int historySize = 720;
+    /** The resident memory allowed per client in bytes, or {@code -1} */
+    private volatile long memoryLimit = -1;
+    /** What to do with a client over the memory limit */
+    private volatile Policy memoryPolicy = Policy.RESTART;
+    /** The cores allowed per client, or {@code -1} */
+    private volatile double cpuLimit = -1;
+    /** The consecutive samples over the CPU limit that trigger it */
+    private volatile int cpuSamples = 1;
+    /** What to do with a client over the CPU limit */
+    private volatile Policy cpuPolicy = Policy.RESTART;
+    /** The most restarts per client since it was last stable */
+    private volatile int maxRestarts = 5;
+    /** The delay before the first restart, in milliseconds */
+    private volatile long baseBackoff = 1000;
+    /** The largest delay between restarts, in milliseconds */
+    private volatile long maxBackoff = 60000;
+
+    /**
+     * Constructs a new {@link Supervisor} that samples every five seconds
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public Supervisor() {
+        this(5000);
+    }
+
+    /**
+     * Constructs a new {@link Supervisor}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param intervalMillis How often each client is sampled
+     */
+    public Supervisor(long intervalMillis) {
+        long interval = Math.max(1, intervalMillis);
+        this.sampler = Supervisor.SCHEDULER.scheduleWithFixedDelay(this::sample, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Launches a client and supervises it until it exits cleanly, is stopped,
+     * or runs out of restarts. The first launch is made on the calling
+     * thread; restarts call the supplied {@link Launch} again.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name A name identifying the client instance
+     * @param launch Launches the client, e.g.
+     *               {@code () -> client.launch(uuid, name)}
+     * @return The supervised {@link Instance}
+     * @throws IOException Failure to make the first launch
+     */
+    public Instance supervise(String name, Launch launch) throws IOException {
+        Instance back = new Instance(name, launch);
+        this.instances.add(back);
+        try {
+            back.start(launch.launch());
+        } catch (IOException | RuntimeException ex) {
+            this.instances.remove(back);
+            throw ex;
+        }
+        return back;
+    }
+
+    /**
+     * Returns the clients currently supervised
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return A snapshot of the supervised {@link Instance Instances}
+     */
+    public List<Instance> getInstances() {
+        return Collections.unmodifiableList(new ArrayList<>(this.instances));
+    }
+
+    /**
+     * Sets the number of samples kept per client. 720 by default, an hour at
+     * the default interval.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param samples The number of samples to keep
+     * @return This instance
+     */
+    public Supervisor setHistorySize(int samples) {
+        this.historySize = Math.max(1, samples);
+        return this;
+    }
+
+    /**
+     * Sets the resident memory a client may use. Unlimited by default.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param bytes The RSS limit in bytes, or {@code -1} for no limit
+     * @param policy What to do with a client over the limit
+     * @return This instance
+     */
+    public Supervisor setMemoryLimit(long bytes, Policy policy) {
+        this.memoryLimit = bytes;
+        this.memoryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Sets the CPU a client may use. A client is over the limit once it has
+     * kept more than the supplied number of cores busy for several samples
+     * in a row, so that start-up spikes can be tolerated. Unlimited by
+     * default.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param cores The CPU limit in cores, or {@code -1} for no limit
+     * @param samples The consecutive samples over the limit that trigger it
+     * @param policy What to do with a client over the limit
+     * @return This instance
+     */
+    public Supervisor setCpuLimit(double cores, int samples, Policy policy) {
+        this.cpuLimit = cores;
+        this.cpuSamples = Math.max(1, samples);
+        this.cpuPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Sets how crashed clients are restarted. A client that exits with a
+     * non-zero code is relaunched after a delay that doubles with each
+     * consecutive crash, from the base delay up to the maximum; a client that
+     * stayed up for the maximum delay is considered stable again. The restart
+     * limit counts restarts since the client was last stable, so only a
+     * client that keeps failing is given up on. By default, clients are
+     * restarted up to 5 times in a row, after 1 second up to 1 minute.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param maxRestarts The most restarts in a row per client
+     * @param baseMillis The delay before the first restart
+     * @param maxMillis The largest delay between restarts
+     * @return This instance
+     */
+    public Supervisor setRestarts(int maxRestarts, long baseMillis, long maxMillis) {
+        this.maxRestarts = Math.max(0, maxRestarts);
+        this.baseBackoff = Math.max(0, baseMillis);
+        this.maxBackoff = Math.max(this.baseBackoff, maxMillis);
+        return this;
+    }
+
+    /**
+     * Stops sampling and restarting. Clients are left running.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public void shutdown() {
+        this.sampler.cancel(false);
+        for (Instance inst : this.instances) {
+            synchronized (inst) {
+                inst.state = State.STOPPED;
+            }
+        }
+        this.instances.clear();
+    }
+
+    /**
+     * Samples every supervised client, on the scheduler thread
+     */
+    private void sample() {
+        for (Instance inst : this.instances) {
+            try {
+                inst.sample();
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the delay before a restart
+     *
+     * @param failures The consecutive crashes so far, including this one
+     * @return The delay in milliseconds
+     */
+    private long backoff(int failures) {
+        long back = this.baseBackoff << Math.min(30, failures - 1);
+        return back < 0 ? this.maxBackoff : Math.min(this.maxBackoff, back);
+    }
+
+    /**
+     * Reads a sample of a process from {@code /proc}
+     *
+     * @param pid The process id
+     * @param previous The previous sample of the process, or {@code null}
+     * @return The sample, or {@code null} if {@code /proc} could not be read
+     */
+    static ResourceSample read(long pid, ResourceSample previous) {
+        File dir = new File("/proc", Long.toString(pid));
+        try {
+            long time = System.currentTimeMillis();
+            String stat = new String(Files.readAllBytes(new File(dir, "stat").toPath()), StandardCharsets.US_ASCII);
+            // the command name may hold spaces, so count fields from the end of it; field 3 is first
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long cpu = (Long.parseLong(fields[11]) + Long.parseLong(fields[12])) * Supervisor.NANOS_PER_TICK;
+            long rss = -1;
+            int threads = -1;
+            for (String line : Files.readAllLines(new File(dir, "status").toPath(), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("VmRSS:")) {
+                    rss = Long.parseLong(line.substring(6).replace("kB", "").trim()) << 10;
+                } else if (line.startsWith("Threads:")) {
+                    threads = Integer.parseInt(line.substring(8).trim());
+                }
+            }
+            double load = 0;
+            if (previous != null && time > previous.getTime()) {
+                load = (cpu - previous.getCpuNanos()) / (double) TimeUnit.MILLISECONDS.toNanos(time - previous.getTime());
+            }
+            return new ResourceSample(time, cpu, Math.max(0, load), rss, threads);
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the id of a process. Java 8 has no public way to get it, so
+     * the field of the platform's process class is read instead.
+     *
+     * @param process The process
+     * @return The process id, or {@code -1} if it cannot be found
+     */
+    static long pid(Process process) {
+        try {
+            if (Supervisor.PID != null) {
+                return (Long) Supervisor.PID.invoke(process);
+            }
+            Field f = process.getClass().getDeclaredField("pid");
+            f.setAccessible(true);
+            return f.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    private static Method pidMethod() {
+        try {
+            return Process.class.getMethod("pid");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Launches a client for a {@link Supervisor}
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    @FunctionalInterface
+    public static interface Launch {
+
+        /**
+         * Launches the client
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The handle of the launch
+         * @throws IOException Failure to launch
+         */
+        public LaunchHandle launch() throws IOException;
+
+    }
+
+    /**
+     * A supervised client, across all of its restarts
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public final class Instance {
+
+        /** The name of the client instance */
+        private final String name;
+        /** Launches the client */
+        private final Launch launch;
+        /** The most recent samples, oldest first; guarded by {@code this} */
+        private final Deque<ResourceSample> history = new ArrayDeque<>();
+        /** The current launch */
+        private volatile LaunchHandle handle;
+        /** The current state, guarded by {@code this} */
+        private State state = State.RUNNING;
+        /** The number of restarts so far, guarded by {@code this} */
+        private int restarts;
+        /** The consecutive crashes, guarded by {@code this} */
+        private int failures;
+        /** The restarts since the client was last stable, guarded by {@code this} */
+        private int recent;
+        /** Whether the client is being killed to be restarted, guarded by {@code this} */
+        private boolean restartRequested;
+        /** When the current launch was made */
+        private long startedAt;
+        /** The launch last sampled, only touched when sampling */
+        private LaunchHandle sampled;
+        /** The process id of the launch last sampled, or {@code -1} */
+        private long pid;
+        /** The last sample of that launch, only touched when sampling */
+        private ResourceSample last;
+        /** The consecutive samples over the CPU limit, only touched when sampling */
+        private int cpuOver;
+
+        private Instance(String name, Launch launch) {
+            this.name = name;
+            this.launch = launch;
+        }
+
+        /**
+         * Returns the name of the client instance
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The instance name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Returns the handle of the current launch
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The current {@link LaunchHandle}
+         */
+        public LaunchHandle getHandle() {
+            return this.handle;
+        }
+
+        /**
+         * Returns the current state of the client
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The {@link State}
+         */
+        public synchronized State getState() {
+            return this.state;
+        }
+
+        /**
+         * Returns the number of times the client was restarted
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The restart count
+         */
+        public synchronized int getRestarts() {
+            return this.restarts;
+        }
+
+        /**
+         * Returns the most recent resource samples, across restarts
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The samples, oldest first
+         */
+        public synchronized List<ResourceSample> getHistory() {
+            return new ArrayList<>(this.history);
+        }
+
+        /**
+         * Returns the most recent resource sample
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The latest {@link ResourceSample}, or {@code null} if none
+         *         was taken yet
+         */
+        public synchronized ResourceSample getLatest() {
+            return this.history.peekLast();
+        }
+
+        /**
+         * Returns the largest resident memory in the kept history
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The peak RSS in bytes, or {@code 0} without samples
+         */
+        public synchronized long getPeakRss() {
+            long back = 0;
+            for (ResourceSample s : this.history) {
+                back = Math.max(back, s.getRss());
+            }
+            return back;
+        }
+
+        /**
+         * Returns the average CPU load over the kept history
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The mean cores in use, or {@code 0} without samples
+         */
+        public synchronized double getMeanCpuLoad() {
+            double sum = 0;
+            for (ResourceSample s : this.history) {
+                sum += s.getCpuLoad();
+            }
+            return this.history.isEmpty() ? 0 : sum / this.history.size();
+        }
+
+        /**
+         * Stops supervising the client and shuts it down
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         */
+        public void stop() {
+            LaunchHandle h;
+            synchronized (this) {
+                this.state = State.STOPPED;
+                h = this.handle;
+            }
+            Supervisor.this.instances.remove(this);
+            if (h != null) {
+                h.cancel(false);
+            }
+        }
+
+        /**
+         * Takes over a new launch of the client
+         *
+         * @param h The {@link LaunchHandle} of the launch
+         */
+        private void start(LaunchHandle h) {
+            synchronized (this) {
+                if (this.state == State.STOPPED) {
+                    h.cancel(false);
+                    return;
+                }
+                this.handle = h;
+                this.state = State.RUNNING;
+                this.startedAt = System.nanoTime();
+            }
+            h.onExit(code -> this.exited(h, code));
+            h.onFailure(ex -> {
+                System.err.println("Unable to start " + this.name + ": " + ex.getMessage());
+                this.exited(h, -1);
+            });
+        }
+
+        /**
+         * Restarts the client after a crash or a breached limit, and stops
+         * supervising it after a clean exit
+         *
+         * @param h The launch that ended
+         * @param code Its exit code
+         */
+        private void exited(LaunchHandle h, int code) {
+            boolean again;
+            synchronized (this) {
+                if (h != this.handle || this.state == State.STOPPED) {
+                    return;
+                }
+                again = this.restartRequested || code != 0;
+                this.restartRequested = false;
+                if (System.nanoTime() - this.startedAt >= TimeUnit.MILLISECONDS.toNanos(Supervisor.this.maxBackoff)) {
+                    this.failures = 0;
+                    this.recent = 0;
+                }
+                if (!again) {
+                    this.state = State.STOPPED;
+                }
+            }
+            if (again) {
+                this.scheduleRestart();
+            } else {
+                Supervisor.this.instances.remove(this);
+            }
+        }
+
+        private void scheduleRestart() {
+            long delay;
+            synchronized (this) {
+                if (this.state == State.STOPPED) {
+                    return;
+                }
+                if (this.recent >= Supervisor.this.maxRestarts) {
+                    System.err.println("Giving up on " + this.name + " after " + this.recent + " restarts in a row");
+                    this.state = State.STOPPED;
+                    Supervisor.this.instances.remove(this);
+                    return;
+                }
+                this.restarts++;
+                this.recent++;
+                this.failures++;
+                this.state = State.BACKOFF;
+                delay = Supervisor.this.backoff(this.failures);
+            }
+            Supervisor.SCHEDULER.schedule(() -> Supervisor.WORKERS.execute(this::relaunch), delay, TimeUnit.MILLISECONDS);
+        }
+
+        private void relaunch() {
+            synchronized (this) {
+                if (this.state == State.STOPPED) {
+                    return;
+                }
+            }
+            try {
+                this.start(this.launch.launch());
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Unable to restart " + this.name + ": " + ex.getMessage());
+                this.scheduleRestart();
+            }
+        }
+
+        /**
+         * Samples the current launch and enforces the limits, on the
+         * scheduler thread
+         */
+        private void sample() {
+            LaunchHandle h = this.handle;
+            Process p = h == null ? null : h.getProcess();
+            if (p == null || !p.isAlive()) {
+                return;
+            }
+            if (this.sampled != h) {
+                this.sampled = h;
+                this.pid = Supervisor.pid(p);
+                this.last = null;
+                this.cpuOver = 0;
+            }
+            ResourceSample prev = this.last;
+            ResourceSample s = this.pid < 0 ? null : Supervisor.read(this.pid, prev);
+            if (s == null) {
+                return;
+            }
+            this.last = s;
+            synchronized (this) {
+                this.history.addLast(s);
+                while (this.history.size() > Supervisor.this.historySize) {
+                    this.history.removeFirst();
+                }
+            }
+            long mem = Supervisor.this.memoryLimit;
+            if (mem > 0 && s.getRss() > mem) {
+                this.breach(p, Supervisor.this.memoryPolicy, "RSS of " + (s.getRss() >> 20) + "M is over the limit");
+                return;
+            }
+            double cpu = Supervisor.this.cpuLimit;
+            if (cpu > 0 && prev != null && s.getCpuLoad() > cpu) {
+                if (++this.cpuOver >= Supervisor.this.cpuSamples) {
+                    this.breach(p, Supervisor.this.cpuPolicy, String.format("CPU load of %.2f is over the limit", s.getCpuLoad()));
+                }
+            } else {
+                this.cpuOver = 0;
+            }
+        }
+
+        /**
+         * Kills a client that is over a limit, asking for a restart if the
+         * policy says so
+         */
+        private void breach(Process p, Policy policy, String reason) {
+            System.err.println(this.name + ": " + reason + ", " + (policy == Policy.KILL ? "killing" : "restarting") + " it");
+            this.cpuOver = 0;
+            synchronized (this) {
+                if (policy == Policy.RESTART) {
+                    this.restartRequested = true;
+                } else {
+                    this.state = State.STOPPED;
+                    Supervisor.this.instances.remove(this);
+                }
+            }
+            p.destroyForcibly();
+        }
+
+        @Override
+        public String toString() {
+            return this.name + "[" + this.getState() + ", restarts=" + this.getRestarts() + ", " + this.getLatest() + "]";
+        }
+
+    }
+
+    /**
+     * What to do with a client that is over a limit
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum Policy {
+        /** Kill the client and stop supervising it */
+        KILL,
+        /** Kill the client and restart it */
+        RESTART,
+        ;
+    }
+
+    /**
+     * The states of a supervised client
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum State {
+        /** Launched, whether still queued or running */
+        RUNNING,
+        /** Crashed or killed, and waiting to be restarted */
+        BACKOFF,
+        /** No longer supervised */
+        STOPPED,
+        ;
+    }
+
+}
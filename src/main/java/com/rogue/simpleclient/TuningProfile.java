@@ -0,0 +1,450 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses JVM flags for a client based on the host it runs on and how many
+ * other clients share it. Host memory and processors are divided evenly
+ * between the running instances, and each preset decides how much of its
+ * share goes to the heap, which collector to use and how large the code
+ * cache is.
+ * <br /><br />
+ * Extra flags, whether added to a profile through {@link #with(String...)}
+ * or passed for a single launch, replace any generated flag that sets the
+ * same option, so {@code -Xmx3G} overrides the computed heap size and
+ * {@code -XX:+UseParallelGC} the preset's collector.
+ * <br /><br />
+ * Flags that not every supported runtime accepts are only generated when
+ * the java version of the clients is known to support them; an unknown
+ * flag would stop the client JVM from starting at all.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class TuningProfile {
+
+    /** Small heaps, the serial collector and C1 only, for many headless clients */
+    public static final TuningProfile LIGHT = new TuningProfile("light", Collector.SERIAL, 0.6, 0.5, 256, 1024, 64, 2,
+            Collections.singletonList("-XX:TieredStopAtLevel=1"));
+    /** G1 with a moderate heap, suited to a few clients per host */
+    public static final TuningProfile BALANCED = new TuningProfile("balanced", Collector.G1, 0.7, 0.25, 1024, 4096, 128, 4,
+            Collections.singletonList("-XX:MaxGCPauseMillis=50"));
+    /** G1 with a large, fully committed heap, for a single client */
+    public static final TuningProfile PERFORMANCE = new TuningProfile("performance", Collector.G1, 0.75, 1.0, 2048, 8192, 240, Integer.MAX_VALUE,
+            Arrays.asList("-XX:MaxGCPauseMillis=30", "-XX:+ParallelRefProcEnabled"));
+    /** The share of host memory handed out to clients, leaving the rest for the system */
+    private static final double HOST_SHARE = 0.75;
+    /** The smallest maximum heap ever generated, in megabytes */
+    private static final long MIN_HEAP = 64;
+    /** The name of the profile */
+    private final String name;
+    /** The garbage collector to select */
+    private final Collector collector;
+    /** The share of an instance's memory used for its maximum heap */
+    private final double heapRatio;
+    /** The initial heap as a share of the maximum heap */
+    private final double initialRatio;
+    /** The smallest maximum heap, in megabytes */
+    private final int minHeap;
+    /** The largest maximum heap, in megabytes */
+    private final int maxHeap;
+    /** The reserved code cache size, in megabytes */
+    private final int codeCache;
+    /** The most processors a single instance is allowed to see */
+    private final int maxCpus;
+    /** Flags added after the generated ones, replacing any for the same option */
+    private final List<String> extra;
+
+    private TuningProfile(String name, Collector collector, double heapRatio, double initialRatio, int minHeap,
+            int maxHeap, int codeCache, int maxCpus, List<String> extra) {
+        this.name = name;
+        this.collector = collector;
+        this.heapRatio = heapRatio;
+        this.initialRatio = initialRatio;
+        this.minHeap = minHeap;
+        this.maxHeap = maxHeap;
+        this.codeCache = codeCache;
+        this.maxCpus = maxCpus;
+        this.extra = Collections.unmodifiableList(new ArrayList<>(extra));
+    }
+
+    /**
+     * Returns a preset by name
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param name {@code light}, {@code balanced} or {@code performance}
+     * @return The matching preset
+     * @throws IllegalArgumentException If there is no such preset
+     */
+    public static TuningProfile named(String name) {
+        for (TuningProfile p : new TuningProfile[]{LIGHT, BALANCED, PERFORMANCE}) {
+            if (p.name.equalsIgnoreCase(name)) {
+                return p;
+            }
+        }
+        throw new IllegalArgumentException("Unknown tuning profile: " + name);
+    }
+
+    /**
+     * Returns a copy of this profile with extra flags, which replace any
+     * generated or previously added flag for the same option
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param flags The flags to add
+     * @return A new {@link TuningProfile}
+     */
+    public TuningProfile with(String... flags) {
+        return new TuningProfile(this.name, this.collector, this.heapRatio, this.initialRatio, this.minHeap,
+                this.maxHeap, this.codeCache, this.maxCpus, TuningProfile.merge(this.extra, Arrays.asList(flags)));
+    }
+
+    /**
+     * Returns the name of this profile
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The profile's name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Computes the flags for a client on this host, started with the
+     * {@code java} executable on the path
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param instances The number of clients that will be running, including
+     *                  the one being launched
+     * @return A new, modifiable list of JVM flags
+     */
+    public List<String> flags(int instances) {
+        return this.flags(Host.current(), instances, ClassDataSharing.javaVersion("java"));
+    }
+
+    /**
+     * Computes the flags for a client on the supplied host, leaving out the
+     * flags that depend on the java version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param host The {@link Host} the client runs on
+     * @param instances The number of clients that will be running, including
+     *                  the one being launched
+     * @return A new, modifiable list of JVM flags
+     */
+    public List<String> flags(Host host, int instances) {
+        return this.flags(host, instances, null);
+    }
+
+    /**
+     * Computes the flags for a client on the supplied host and java version.
+     * The heap stays within the client's share of host memory, even when
+     * that is below the profile's usual minimum heap.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param host The {@link Host} the client runs on
+     * @param instances The number of clients that will be running, including
+     *                  the one being launched
+     * @param javaVersion The version the client's java reports, e.g.
+     *                    {@code 1.8.0_181}, or {@code null} if unknown
+     * @return A new, modifiable list of JVM flags
+     */
+    public List<String> flags(Host host, int instances, String javaVersion) {
+        int n = Math.max(1, instances);
+        long share = (long) (host.getMemory() * HOST_SHARE / n);
+        long fit = (long) (share * this.heapRatio) >> 20;
+        long floor = Math.max(MIN_HEAP, Math.min(this.minHeap, fit));
+        long heap = Math.min(this.maxHeap, Math.max(floor, fit));
+        long initial = Math.max(Math.min(heap, floor / 2), (long) (heap * this.initialRatio));
+        int cpus = Math.max(1, Math.min(this.maxCpus, host.getProcessors() / n));
+        List<String> back = new ArrayList<>();
+        back.add("-Xms" + initial + "M");
+        back.add("-Xmx" + heap + "M");
+        back.add(this.collector.flag);
+        if (TuningProfile.hasActiveProcessorCount(javaVersion)) {
+            back.add("-XX:ActiveProcessorCount=" + cpus);
+        }
+        if (this.collector != Collector.SERIAL) {
+            back.add("-XX:ParallelGCThreads=" + cpus);
+            if (this.collector == Collector.G1) {
+                back.add("-XX:ConcGCThreads=" + Math.max(1, (cpus + 2) / 4));
+            }
+        }
+        back.add("-XX:ReservedCodeCacheSize=" + this.codeCache + "M");
+        return TuningProfile.merge(back, this.extra);
+    }
+
+    @Override
+    public String toString() {
+        return "TuningProfile{" + this.name + (this.extra.isEmpty() ? "" : ", " + this.extra) + "}";
+    }
+
+    /**
+     * Merges two lists of JVM flags, with later flags replacing earlier ones
+     * that set the same option. An initial heap left larger than the maximum
+     * by an override is dropped, as the JVM would refuse to start.
+     *
+     * @param base The original flags
+     * @param overrides The flags that take precedence
+     * @return A new, modifiable list of flags
+     */
+    static List<String> merge(List<String> base, List<String> overrides) {
+        Map<String, String> back = new LinkedHashMap<>();
+        for (String flag : base) {
+            back.put(TuningProfile.option(flag), flag);
+        }
+        for (String flag : overrides) {
+            String key = TuningProfile.option(flag);
+            back.remove(key);
+            back.put(key, flag);
+        }
+        String xms = back.get("-Xms");
+        String xmx = back.get("-Xmx");
+        if (xms != null && xmx != null && TuningProfile.bytes(xms.substring(4)) > TuningProfile.bytes(xmx.substring(4))) {
+            back.remove("-Xms");
+        }
+        return new ArrayList<>(back.values());
+    }
+
+    /**
+     * Returns whether a java version accepts
+     * {@code -XX:ActiveProcessorCount}, which arrived in java 10 and was
+     * backported to 8u191
+     *
+     * @param version The java version, or {@code null} if unknown
+     * @return {@code true} if the flag is known to be accepted
+     */
+    static boolean hasActiveProcessorCount(String version) {
+        if (version == null) {
+            return false;
+        }
+        int major = ClassDataSharing.major(version);
+        if (major != 8) {
+            return major >= 10;
+        }
+        int update = version.indexOf('_');
+        if (update < 0) {
+            return false;
+        }
+        int end = update + 1;
+        while (end < version.length() && Character.isDigit(version.charAt(end))) {
+            end++;
+        }
+        try {
+            return Integer.parseInt(version.substring(update + 1, end)) >= 191;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a JVM memory size such as {@code 512M} or {@code 2g}
+     *
+     * @param size The size
+     * @return The size in bytes, or {@code -1} if it cannot be parsed
+     */
+    private static long bytes(String size) {
+        if (size.isEmpty()) {
+            return -1;
+        }
+        int shift;
+        switch (Character.toLowerCase(size.charAt(size.length() - 1))) {
+            case 'k':
+                shift = 10;
+                break;
+            case 'm':
+                shift = 20;
+                break;
+            case 'g':
+                shift = 30;
+                break;
+            case 't':
+                shift = 40;
+                break;
+            default:
+                shift = 0;
+        }
+        try {
+            return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the option a flag sets, so that flags for the same option can
+     * replace each other. All collector selections count as one option.
+     *
+     * @param flag The JVM flag
+     * @return The option's key
+     */
+    private static String option(String flag) {
+        if (flag.startsWith("-XX:")) {
+            String opt = flag.substring(4);
+            if (opt.startsWith("+") || opt.startsWith("-")) {
+                opt = opt.substring(1);
+            }
+            int eq = opt.indexOf('=');
+            opt = eq < 0 ? opt : opt.substring(0, eq);
+            return Collector.isSelector(opt) ? "gc" : opt;
+        }
+        if (flag.startsWith("-D")) {
+            int eq = flag.indexOf('=');
+            return eq < 0 ? flag : flag.substring(0, eq);
+        }
+        for (String prefix : new String[]{"-Xms", "-Xmx", "-Xss", "-Xmn"}) {
+            if (flag.startsWith(prefix)) {
+                return prefix;
+            }
+        }
+        return flag;
+    }
+
+    /**
+     * The collectors a profile can select
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static enum Collector {
+        SERIAL("-XX:+UseSerialGC"),
+        PARALLEL("-XX:+UseParallelGC"),
+        G1("-XX:+UseG1GC");
+
+        /** The flag selecting the collector */
+        private final String flag;
+
+        private Collector(String flag) {
+            this.flag = flag;
+        }
+
+        private static boolean isSelector(String option) {
+            switch (option) {
+                case "UseSerialGC":
+                case "UseParallelGC":
+                case "UseParallelOldGC":
+                case "UseConcMarkSweepGC":
+                case "UseG1GC":
+                case "UseShenandoahGC":
+                case "UseZGC":
+                case "UseEpsilonGC":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+    }
+
+    /**
+     * The memory and processors of a host
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static final class Host {
+
+        /** The physical memory of the host, in bytes */
+        private final long memory;
+        /** The processors available on the host */
+        private final int processors;
+
+        /**
+         * Constructs a new {@link Host}
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @param memory The physical memory of the host, in bytes
+         * @param processors The processors available on the host
+         */
+        public Host(long memory, int processors) {
+            this.memory = memory;
+            this.processors = processors;
+        }
+
+        /**
+         * Describes the host this process runs on. If the physical memory
+         * cannot be read, four times this JVM's maximum heap is assumed.
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The current {@link Host}
+         */
+        public static Host current() {
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            long memory = -1;
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                memory = ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize();
+            }
+            if (memory <= 0) {
+                memory = Runtime.getRuntime().maxMemory() * 4;
+            }
+            return new Host(memory, Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Returns the physical memory of the host
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The memory, in bytes
+         */
+        public long getMemory() {
+            return this.memory;
+        }
+
+        /**
+         * Returns the processors available on the host
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The number of processors
+         */
+        public int getProcessors() {
+            return this.processors;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when files needed to launch a client are missing or corrupt
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public class VerificationException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+    /** A description of each problem found */
+    private final List<String> problems;
+
+    /**
+     * Constructs a new {@link VerificationException}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param problems A description of each problem found
+     */
+    public VerificationException(List<String> problems) {
+        super(problems.size() + " file(s) failed verification: " + String.join("; ", problems));
+        this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+    }
+
+    /**
+     * Returns a description of each problem found
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of problems
+     */
+    public List<String> getProblems() {
+        return this.problems;
+    }
+
+}
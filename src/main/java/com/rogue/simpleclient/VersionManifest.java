@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A resolved version manifest: the libraries, natives, arguments and assets
+ * of a version, with its inheritance chain merged and its rules already
+ * evaluated for the current platform.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class VersionManifest {
+
+    /** The default JVM arguments, for manifests that do not declare any */
+    static final List<String> DEFAULT_JVM_ARGUMENTS = Collections.unmodifiableList(Arrays.asList(
+            "-Djava.library.path=${natives_directory}", "-cp", "${classpath}"));
+    /** The game arguments used by the built-in {@link Library} versions */
+    static final List<String> DEFAULT_GAME_ARGUMENTS = Collections.unmodifiableList(Arrays.asList(
+            "--username", "${auth_player_name}", "--uuid", "${auth_uuid}", "--version", "${version_name}",
+            "--gameDir", "${game_directory}", "--assetsDir", "${assets_root}",
+            "--userProperties", "${user_properties}", "--accessToken", "${auth_access_token}"));
+    private final String id;
+    private final String type;
+    private final String mainClass;
+    private final String jar;
+    private final String assets;
+    private final String assetIndexSha1;
+    private final String assetIndexUrl;
+    private final List<String> jvmArguments;
+    private final List<String> gameArguments;
+    private final List<Artifact> libraries;
+    private final List<Artifact> natives;
+
+    VersionManifest(String id, String type, String mainClass, String jar, String assets,
+            String assetIndexSha1, String assetIndexUrl, List<String> jvmArguments,
+            List<String> gameArguments, List<Artifact> libraries, List<Artifact> natives) {
+        this.id = id;
+        this.type = type;
+        this.mainClass = mainClass;
+        this.jar = jar;
+        this.assets = assets;
+        this.assetIndexSha1 = assetIndexSha1;
+        this.assetIndexUrl = assetIndexUrl;
+        this.jvmArguments = Collections.unmodifiableList(new ArrayList<>(jvmArguments));
+        this.gameArguments = Collections.unmodifiableList(new ArrayList<>(gameArguments));
+        this.libraries = Collections.unmodifiableList(new ArrayList<>(libraries));
+        this.natives = Collections.unmodifiableList(new ArrayList<>(natives));
+    }
+
+    /**
+     * Builds a manifest for a version from the built-in {@link Library}
+     * mappings, for use when no manifest file is available
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param version The minecraft version
+     * @return The built-in manifest for the version
+     */
+    static VersionManifest fromLibraries(String version) {
+        List<Artifact> libs = new ArrayList<>();
+        List<Artifact> natives = new ArrayList<>();
+        for (String path : Library.getMappedVersions(version)) {
+            Artifact art = new Artifact(path, null, -1, Collections.singletonList("META-INF/"));
+            libs.add(art);
+            if (path.contains("-natives-")) {
+                natives.add(art);
+            }
+        }
+        return new VersionManifest(version, "release", "net.minecraft.client.main.Main", version, null,
+                null, null, DEFAULT_JVM_ARGUMENTS, DEFAULT_GAME_ARGUMENTS, libs, natives);
+    }
+
+    /**
+     * Returns the id of the version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The version id
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the release type of the version, e.g. {@code release}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The version type
+     */
+    public String getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the main class of the client
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The fully qualified main class name
+     */
+    public String getMainClass() {
+        return this.mainClass;
+    }
+
+    /**
+     * Returns the id of the version whose jar is launched, which differs from
+     * {@link #getId()} for versions inheriting another version's jar
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The jar's version id
+     */
+    public String getJar() {
+        return this.jar;
+    }
+
+    /**
+     * Returns the id of the asset index, or {@code null} if not declared
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The asset index id
+     */
+    public String getAssets() {
+        return this.assets;
+    }
+
+    /**
+     * Returns the SHA-1 of the asset index, or {@code null} if not declared
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The asset index hash
+     */
+    public String getAssetIndexSha1() {
+        return this.assetIndexSha1;
+    }
+
+    /**
+     * Returns the download url of the asset index, or {@code null} if not
+     * declared
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The asset index url
+     */
+    public String getAssetIndexUrl() {
+        return this.assetIndexUrl;
+    }
+
+    /**
+     * Returns the JVM arguments, with placeholders unresolved
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of JVM arguments
+     */
+    public List<String> getJvmArguments() {
+        return this.jvmArguments;
+    }
+
+    /**
+     * Returns the game arguments, with placeholders unresolved
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of game arguments
+     */
+    public List<String> getGameArguments() {
+        return this.gameArguments;
+    }
+
+    /**
+     * Returns the libraries for the classpath, in order
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of classpath libraries
+     */
+    public List<Artifact> getLibraries() {
+        return this.libraries;
+    }
+
+    /**
+     * Returns the jars that natives are extracted from
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return An unmodifiable list of natives jars
+     */
+    public List<Artifact> getNatives() {
+        return this.natives;
+    }
+
+    void write(DataOutput out) throws IOException {
+        VersionManifest.writeString(out, this.id);
+        VersionManifest.writeString(out, this.type);
+        VersionManifest.writeString(out, this.mainClass);
+        VersionManifest.writeString(out, this.jar);
+        VersionManifest.writeString(out, this.assets);
+        VersionManifest.writeString(out, this.assetIndexSha1);
+        VersionManifest.writeString(out, this.assetIndexUrl);
+        VersionManifest.writeStrings(out, this.jvmArguments);
+        VersionManifest.writeStrings(out, this.gameArguments);
+        VersionManifest.writeArtifacts(out, this.libraries);
+        VersionManifest.writeArtifacts(out, this.natives);
+    }
+
+    static VersionManifest read(DataInput in) throws IOException {
+        return new VersionManifest(VersionManifest.readString(in), VersionManifest.readString(in),
+                VersionManifest.readString(in), VersionManifest.readString(in), VersionManifest.readString(in),
+                VersionManifest.readString(in), VersionManifest.readString(in), VersionManifest.readStrings(in),
+                VersionManifest.readStrings(in), VersionManifest.readArtifacts(in), VersionManifest.readArtifacts(in));
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeStrings(DataOutput out, List<String> list) throws IOException {
+        out.writeInt(list.size());
+        for (String s : list) {
+            out.writeUTF(s);
+        }
+    }
+
+    static List<String> readStrings(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<String> back = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            back.add(in.readUTF());
+        }
+        return back;
+    }
+
+    private static void writeArtifacts(DataOutput out, List<Artifact> list) throws IOException {
+        out.writeInt(list.size());
+        for (Artifact a : list) {
+            out.writeUTF(a.path);
+            VersionManifest.writeString(out, a.sha1);
+            out.writeLong(a.size);
+            VersionManifest.writeStrings(out, a.excludes);
+        }
+    }
+
+    private static List<Artifact> readArtifacts(DataInput in) throws IOException {
+        int size = in.readInt();
+        List<Artifact> back = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            back.add(new Artifact(in.readUTF(), VersionManifest.readString(in), in.readLong(),
+                    VersionManifest.readStrings(in)));
+        }
+        return back;
+    }
+
+    /**
+     * A single jar referenced by a manifest
+     *
+     * @since 1.1.0
+     * @author 1Rogue
+     * @version 1.1.0
+     */
+    public static final class Artifact {
+
+        private final String path;
+        private final String sha1;
+        private final long size;
+        private final List<String> excludes;
+
+        Artifact(String path, String sha1, long size, List<String> excludes) {
+            this.path = path;
+            this.sha1 = sha1;
+            this.size = size;
+            this.excludes = Collections.unmodifiableList(new ArrayList<>(excludes));
+        }
+
+        /**
+         * Returns the path of the jar, relative to the libraries folder
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The relative jar path
+         */
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * Returns the expected SHA-1 of the jar, or {@code null} if unknown
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The expected hash
+         */
+        public String getSha1() {
+            return this.sha1;
+        }
+
+        /**
+         * Returns the expected size of the jar, or {@code -1} if unknown
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return The expected size in bytes
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Returns the entry prefixes that are not extracted from a natives
+         * jar
+         *
+         * @since 1.1.0
+         * @version 1.1.0
+         *
+         * @return An unmodifiable list of excluded prefixes
+         */
+        public List<String> getExcludes() {
+            return this.excludes;
+        }
+
+        @Override
+        public String toString() {
+            return this.path;
+        }
+
+    }
+
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps client JVMs started ahead of time, so that a launch only has to hand
+ * over the user's arguments instead of booting a JVM and loading the client.
+ * Each pooled JVM runs {@link WarmStart} on the resolved classpath with the
+ * client's main class already loaded, and waits on its standard input.
+ * <br /><br />
+ * JVMs are pooled per version, application data folder, classpath and JVM
+ * flags, up to the pool size each. The flags are part of the key, so they
+ * must be the same for every launch meant to share the pool: flags that
+ * follow the launcher's load would leave each load level its own JVMs.
+ * Taking one refills the pool in the background, and a launch that finds no
+ * JVM ready starts cold as usual. The JVMs of a version that is not launched
+ * for the idle timeout are shut down.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class WarmPool {
+
+    /** Starts pooled JVMs and evicts idle ones for every pool */
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(Launcher.daemon("SimpleClient-warmpool"));
+    /** The number of JVMs kept ready per version and flags */
+    private final int size;
+    /** How long a version may go unlaunched before its JVMs are shut down */
+    private final long idleNanos;
+    /** The classpath entry holding {@link WarmStart}, or {@code null} */
+    private final String bootstrap;
+    /** The pooled JVMs, keyed by version, folder, flags and classpath; guarded by {@code this} */
+    private final Map<String, Slot> slots = new HashMap<>();
+    /** The periodic eviction task */
+    private final ScheduledFuture<?> sweeper;
+    /** The number of launches handed a pooled JVM */
+    private final AtomicLong hits = new AtomicLong();
+    /** The number of launches that started cold */
+    private final AtomicLong misses = new AtomicLong();
+    /** Whether the pool was shut down, guarded by {@code this} */
+    private boolean closed;
+
+    /**
+     * Constructs a new {@link WarmPool} that shuts down JVMs after five idle
+     * minutes
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param size The number of JVMs kept ready per version
+     */
+    public WarmPool(int size) {
+        this(size, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    /**
+     * Constructs a new {@link WarmPool}
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param size The number of JVMs kept ready per version
+     * @param idleMillis How long a version may go unlaunched before its JVMs
+     *                   are shut down
+     */
+    public WarmPool(int size, long idleMillis) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive");
+        }
+        this.size = size;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleMillis));
+        this.bootstrap = WarmPool.locate();
+        long period = Math.max(10, Math.min(TimeUnit.SECONDS.toMillis(30), idleMillis / 4));
+        this.sweeper = WarmPool.SCHEDULER.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts JVMs for a version ahead of its first launch. Launches only use
+     * them if they are made with the same JVM flags, which should therefore
+     * not depend on how many clients are running.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param plan The {@link LaunchPlan} to start JVMs for
+     * @param jvmArgs The JVM flags the launches will use
+     */
+    public void prepare(LaunchPlan plan, List<String> jvmArgs) {
+        Slot slot = this.slot(plan, jvmArgs);
+        if (slot != null) {
+            WarmPool.SCHEDULER.execute(() -> this.fill(slot));
+        }
+    }
+
+    /**
+     * Returns the number of JVMs kept ready per version
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The pool size
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of JVMs currently waiting to be used
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The idle JVM count
+     */
+    public synchronized int getIdle() {
+        int back = 0;
+        for (Slot slot : this.slots.values()) {
+            back += slot.idle.size();
+        }
+        return back;
+    }
+
+    /**
+     * Returns the number of launches that were handed a pooled JVM
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The hit count
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of launches that found no pooled JVM and started
+     * cold
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @return The miss count
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Shuts down every pooled JVM and stops refilling. Clients already handed
+     * a JVM are left alone.
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     */
+    public void shutdown() {
+        List<Warm> evicted = new ArrayList<>();
+        synchronized (this) {
+            this.closed = true;
+            this.slots.values().forEach(s -> evicted.addAll(s.idle));
+            this.slots.clear();
+        }
+        this.sweeper.cancel(false);
+        evicted.forEach(w -> w.process.destroy());
+    }
+
+    /**
+     * Hands the game arguments to a pooled JVM for the plan and flags, and
+     * refills the pool in the background
+     *
+     * @param plan The {@link LaunchPlan} being launched
+     * @param jvmArgs The JVM flags of the launch
+     * @param gameArgs The arguments for the client's main class
+     * @return The running client, or {@code null} if none was ready
+     */
+    Process take(LaunchPlan plan, List<String> jvmArgs, List<String> gameArgs) {
+        Slot slot = this.slot(plan, jvmArgs);
+        if (slot == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        Warm warm;
+        synchronized (this) {
+            slot.lastUsed = System.nanoTime();
+            while ((warm = slot.idle.poll()) != null && !warm.process.isAlive()) {
+                warm.process.destroy();
+            }
+        }
+        WarmPool.SCHEDULER.execute(() -> this.fill(slot));
+        if (warm != null) {
+            try {
+                warm.hand(gameArgs);
+                this.hits.incrementAndGet();
+                return warm.process;
+            } catch (IOException ex) {
+                warm.process.destroyForcibly();
+            }
+        }
+        this.misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the pool of JVMs for a plan and flags, creating it if needed
+     *
+     * @return The {@link Slot}, or {@code null} if the plan cannot be pooled
+     */
+    private synchronized Slot slot(LaunchPlan plan, List<String> jvmArgs) {
+        if (this.closed || this.bootstrap == null || !plan.isWarmable()) {
+            return null;
+        }
+        String key = plan.getVersion() + '\0' + plan.getMinecraftDir().getPath() + '\0' + String.join("\0", jvmArgs)
+                + '\0' + String.join(File.pathSeparator, plan.getClasspath());
+        Slot back = this.slots.get(key);
+        if (back == null) {
+            back = new Slot(key, plan.warmCommand(jvmArgs, this.bootstrap));
+            this.slots.put(key, back);
+        }
+        return back;
+    }
+
+    /**
+     * Starts JVMs until the slot is full, on the scheduler thread
+     *
+     * @param slot The {@link Slot} to fill
+     */
+    private void fill(Slot slot) {
+        while (true) {
+            synchronized (this) {
+                if (this.closed || this.slots.get(slot.key) != slot || slot.idle.size() >= this.size) {
+                    return;
+                }
+            }
+            Process p;
+            try {
+                p = new ProcessBuilder(slot.command).start();
+            } catch (IOException ex) {
+                System.err.println("Unable to start a pooled JVM: " + ex.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (this.closed || this.slots.get(slot.key) != slot) {
+                    p.destroy();
+                    return;
+                }
+                slot.idle.add(new Warm(p));
+            }
+        }
+    }
+
+    /**
+     * Drops JVMs that died, and shuts down those of slots that went unused
+     * for the idle timeout
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        List<Warm> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Iterator<Slot> itr = this.slots.values().iterator(); itr.hasNext();) {
+                Slot slot = itr.next();
+                slot.idle.removeIf(w -> !w.process.isAlive());
+                if (now - slot.lastUsed >= this.idleNanos) {
+                    evicted.addAll(slot.idle);
+                    itr.remove();
+                }
+            }
+        }
+        evicted.forEach(w -> w.process.destroy());
+    }
+
+    /**
+     * Returns the classpath entry that {@link WarmStart} was loaded from
+     *
+     * @return The jar or directory, or {@code null} if it cannot be found
+     */
+    private static String locate() {
+        CodeSource src = WarmStart.class.getProtectionDomain().getCodeSource();
+        try {
+            if (src != null && src.getLocation() != null) {
+                return new File(src.getLocation().toURI()).getPath();
+            }
+        } catch (URISyntaxException | IllegalArgumentException ex) {
+            // fall through
+        }
+        System.err.println("Unable to locate the SimpleClient classes, JVMs will not be pooled");
+        return null;
+    }
+
+    /**
+     * The pooled JVMs for one version, folder and set of flags
+     */
+    private static final class Slot {
+
+        private final String key;
+        private final List<String> command;
+        private final Queue<Warm> idle = new ArrayDeque<>();
+        private long lastUsed = System.nanoTime();
+
+        public Slot(String key, List<String> command) {
+            this.key = key;
+            this.command = command;
+        }
+
+    }
+
+    /**
+     * A JVM waiting for its game arguments
+     */
+    private static final class Warm {
+
+        private final Process process;
+
+        public Warm(Process process) {
+            this.process = process;
+        }
+
+        /**
+         * Writes the game arguments to the JVM, framed as {@link WarmStart}
+         * expects, and closes its standard input
+         *
+         * @param args The game arguments
+         * @throws IOException If the JVM is no longer reading
+         */
+        public void hand(List<String> args) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(this.process.getOutputStream()))) {
+                out.writeInt(args.size());
+                for (String arg : args) {
+                    byte[] raw = arg.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(raw.length);
+                    out.write(raw);
+                }
+            }
+        }
+
+    }
+
+}
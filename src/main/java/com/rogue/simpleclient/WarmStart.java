@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 Spencer Alderman
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.rogue.simpleclient;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The main class of a pooled client JVM. It loads the client's main class
+ * without initializing it, then blocks until the launcher writes the game
+ * arguments to its standard input and runs the client with them. If the
+ * launcher goes away first, standard input is closed and the JVM exits
+ * without running the client.
+ * <br /><br />
+ * The arguments are framed as a big-endian int count, followed by each
+ * argument as an int length and that many UTF-8 bytes. This class is loaded
+ * on the client's classpath, so it may only use the JDK.
+ *
+ * @since 1.1.0
+ * @author 1Rogue
+ * @version 1.1.0
+ */
+public final class WarmStart {
+
+    private WarmStart() {
+    }
+
+    /**
+     * Loads the main class named by the first argument, then runs it with
+     * the arguments read from standard input
+     *
+     * @since 1.1.0
+     * @version 1.1.0
+     *
+     * @param args The client's main class
+     * @throws Throwable Anything thrown by the client
+     */
+    public static void main(String[] args) throws Throwable {
+        if (args.length != 1) {
+            System.err.println("Usage: WarmStart <main class>");
+            System.exit(2);
+        }
+        Class<?> main = Class.forName(args[0], false, WarmStart.class.getClassLoader());
+        Method entry = main.getMethod("main", String[].class);
+        String[] game;
+        try {
+            game = WarmStart.read(new DataInputStream(System.in));
+        } catch (EOFException ex) {
+            return;
+        }
+        try {
+            entry.invoke(null, (Object) game);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Reads a framed argument list
+     *
+     * @param in The stream to read from
+     * @return The arguments
+     * @throws IOException Failure to read, or a closed stream
+     */
+    private static String[] read(DataInputStream in) throws IOException {
+        String[] back = new String[in.readInt()];
+        for (int i = 0; i < back.length; i++) {
+            byte[] raw = new byte[in.readInt()];
+            in.readFully(raw);
+            back[i] = new String(raw, StandardCharsets.UTF_8);
+        }
+        return back;
+    }
+
+}